@@ -0,0 +1,118 @@
+package app.benchmark;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Raw RFC822 emails covering the shapes the extractor sees, created the same way as the emails in
+ * {@code test-data/eml}.
+ */
+public class BenchmarkEmails {
+    private static final String TEST_DOCUMENTS_PATH = "./test-data/";
+
+    private static final Session session = Session.getDefaultInstance(new Properties());
+
+    public static byte[] create(String email) throws Exception {
+        switch (email) {
+            case "smallPlain":
+                return smallPlain();
+            case "largeHtml":
+                return largeHtml();
+            case "attachments":
+                return attachments();
+            case "malformedHeaders":
+                return malformedHeaders();
+            default:
+                throw new IllegalArgumentException("Unknown benchmark email: " + email);
+        }
+    }
+
+    private static byte[] smallPlain() throws Exception {
+        MimeMessage message = new MimeMessage(session);
+        MimeMessageHelper helper = new MimeMessageHelper(message, false, "UTF-8");
+        helper.setFrom("test@email.com");
+        helper.setTo(new String[]{"person1@email.com", "person2@email.com"});
+        helper.setSubject("A simple test email for a plain text body");
+        helper.setText("Hi there this is a plain text body");
+        return toBytes(message);
+    }
+
+    /**
+     * About 200KB of html with a plain text alternative.
+     */
+    private static byte[] largeHtml() throws Exception {
+        StringBuilder html = new StringBuilder("<html><body><table>");
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 2500; i++) {
+            html.append("<tr><td>").append(i).append("</td><td>Order item ").append(i)
+                    .append(" shipped to warehouse ").append(i % 7).append("</td></tr>\n");
+            plain.append(i).append(" Order item ").append(i).append('\n');
+        }
+        html.append("</table></body></html>");
+
+        MimeMessage message = new MimeMessage(session);
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setFrom("no-reply@user-registration.com");
+        helper.setTo("user1011@email.com");
+        helper.setCc(new String[]{"me1@email.com", "me2@email.com"});
+        helper.setSubject("Warehouse manager - Monthly order report");
+        helper.setText(plain.toString(), html.toString());
+        return toBytes(message);
+    }
+
+    /**
+     * The attachments from {@code test-data} plus a 1MB binary attachment.
+     */
+    private static byte[] attachments() throws Exception {
+        byte[] report = new byte[1024 * 1024];
+        new Random(42).nextBytes(report);
+
+        MimeMessage message = new MimeMessage(session);
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setFrom("test@email.com");
+        helper.setTo(new String[]{"person1@email.com", "person2@email.com"});
+        helper.setCc(new String[]{"me1@email.com", "me2@email.com"});
+        helper.setBcc(new String[]{"me3@email.com", "me4@email.com"});
+        helper.setSubject("A simple test email");
+        helper.setText("<html><body><h1>Hi there with attachments</h1></body></html>", true);
+        helper.addInline("house", new File(TEST_DOCUMENTS_PATH + "house.png"));
+        helper.addInline("styles", new File(TEST_DOCUMENTS_PATH + "styles.css"));
+        helper.addAttachment("list.txt", new File(TEST_DOCUMENTS_PATH + "list.txt"));
+        helper.addAttachment("notes.txt", new File(TEST_DOCUMENTS_PATH + "notes.txt"));
+        helper.addAttachment("sales.pdf", new ByteArrayResource(report), "application/pdf");
+        message.setDescription("a message description");
+        return toBytes(message);
+    }
+
+    /**
+     * Headers the extractors have to fall back on: invalid addresses, an unparseable date, raw 8 bit text and a
+     * missing content type.
+     */
+    private static byte[] malformedHeaders() {
+        String email = "From: \"unterminated <test@email.com\r\n" +
+                "Sender: sender@email.com\r\n" +
+                "To: person1@email.com,, <<person2@email.com>>, ;\r\n" +
+                "Cc: undisclosed-recipients:;\r\n" +
+                "Subject: =?UTF-8?B?not base64?= Salés réport\r\n" +
+                "\tfolded onto a second line\r\n" +
+                "Date: sometime last week\r\n" +
+                "Content-Transfer-Encoding: 8bit\r\n" +
+                "\r\n" +
+                "Hi there this body has no content type\r\n";
+        return email.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(MimeMessage message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package app.benchmark;
+
+import app.domain.EmailMessage;
+import app.mailextractors.EmailExtractor;
+import app.mailextractors.StreamingEmailExtractor;
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput of each extractor over emails already in memory, so only the parsing is measured.
+ * Run with {@code -prof gc} to see the allocation rate per parsed email.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailExtractorBenchmark {
+
+    @Param({"smallPlain", "largeHtml", "attachments", "malformedHeaders"})
+    public String email;
+
+    private final Session session = Session.getDefaultInstance(new Properties());
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        bytes = BenchmarkEmails.create(email);
+    }
+
+    @Benchmark
+    public EmailMessage mimeMessageParser() throws Exception {
+        return EmailExtractor.parse(new MimeMessage(session, new ByteArrayInputStream(bytes)));
+    }
+
+    @Benchmark
+    public EmailMessage streamingParser() throws Exception {
+        return StreamingEmailExtractor.parse(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,69 @@
+package app.benchmark;
+
+import app.domain.EmailMessage;
+import app.mailextractors.EmailExtractor;
+import app.mailextractors.MappedSharedInputStream;
+import app.mailextractors.StreamingEmailExtractor;
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and parsing an email file the way {@code EmailIntegration} does, comparing a plain
+ * {@code FileInputStream} against {@link MappedSharedInputStream}. Run with {@code -prof gc} for allocations and
+ * under {@code strace -f -c} for syscall counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailFileReadBenchmark {
+
+    @Param({"smallPlain", "largeHtml", "attachments"})
+    public String email;
+
+    private final Session session = Session.getDefaultInstance(new Properties());
+
+    private File file;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = File.createTempFile("benchmark-", ".eml");
+        Files.write(file.toPath(), BenchmarkEmails.create(email));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public EmailMessage fileInputStream() throws Exception {
+        try (InputStream is = new FileInputStream(file)) {
+            return EmailExtractor.parse(new MimeMessage(session, is));
+        }
+    }
+
+    @Benchmark
+    public EmailMessage mappedSharedInputStream() throws Exception {
+        try (InputStream is = MappedSharedInputStream.open(file)) {
+            return EmailExtractor.parse(new MimeMessage(session, is));
+        }
+    }
+
+    @Benchmark
+    public EmailMessage mappedStreamingParser() throws Exception {
+        try (InputStream is = MappedSharedInputStream.open(file)) {
+            return StreamingEmailExtractor.parse(is);
+        }
+    }
+}
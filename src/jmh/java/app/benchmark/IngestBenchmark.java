@@ -0,0 +1,88 @@
+package app.benchmark;
+
+import app.WebApplication;
+import app.web.EmailMessageRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End to end latency from an email file landing in the input directory until it is saved in the database,
+ * running the real {@code EmailIntegration} flows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestBenchmark {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Param({"smallPlain", "attachments"})
+    public String email;
+
+    @Param({"true", "false"})
+    public boolean watch;
+
+    private File inputDir;
+    private ConfigurableApplicationContext context;
+    private EmailMessageRepository repository;
+
+    private byte[] bytes;
+    private long count;
+    private long saved;
+
+    @Setup
+    public void setUp() throws Exception {
+        bytes = BenchmarkEmails.create(email);
+        inputDir = Files.createTempDirectory("benchmark-emails").toFile();
+
+        context = new SpringApplicationBuilder(WebApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "email.input.dir=" + inputDir.getAbsolutePath(),
+                        "email.input.dir.poll.rate.seconds=1",
+                        "email.input.dir.watch=" + watch,
+                        "email.input.dir.watch.poll.rate.millis=10")
+                .run();
+        repository = context.getBean(EmailMessageRepository.class);
+        saved = repository.count();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(inputDir);
+    }
+
+    @Benchmark
+    public long fileToDatabase() throws Exception {
+        // Written under another name first so the file is never picked up half written.
+        File tmp = new File(inputDir, "email-" + count + ".tmp");
+        File eml = new File(inputDir, "email-" + count + ".eml");
+        count++;
+        Files.write(tmp.toPath(), bytes);
+        Files.move(tmp.toPath(), eml.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        long expected = saved + 1;
+        while ((saved = repository.count()) < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("Email " + eml + " was not saved within 30 seconds");
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return saved;
+    }
+}
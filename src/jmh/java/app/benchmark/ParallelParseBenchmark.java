@@ -0,0 +1,100 @@
+package app.benchmark;
+
+import app.integration.EmailIntegration;
+import app.mailextractors.EmailExtractor;
+import app.mailextractors.MappedSharedInputStream;
+import app.mailextractors.StreamingEmailExtractor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.FileSystemUtils;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Emails parsed per second as the {@code emailParserExecutor} is given more threads. Each invocation pushes a batch of
+ * email files through an executor built by {@link EmailIntegration#parserExecutor}, reading and parsing each file the
+ * way {@code emailFileTransformer} does, and waits for the whole batch.
+ *
+ * <p>A {@code threads} of 0 uses the number of available processors, the default for {@code email.parser.threads}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@OperationsPerInvocation(ParallelParseBenchmark.BATCH_SIZE)
+public class ParallelParseBenchmark {
+    static final int BATCH_SIZE = 500;
+
+    @Param({"1", "2", "0"})
+    public int threads;
+
+    @Param({"smallPlain", "attachments"})
+    public String email;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private final Session session = Session.getDefaultInstance(new Properties());
+
+    private File inputDir;
+    private final List<File> files = new ArrayList<>();
+    private ThreadPoolTaskExecutor executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] bytes = BenchmarkEmails.create(email);
+        inputDir = Files.createTempDirectory("benchmark-emails").toFile();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            File file = new File(inputDir, "email-" + i + ".eml");
+            Files.write(file.toPath(), bytes);
+            files.add(file);
+        }
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = EmailIntegration.parserExecutor(poolSize, 1000);
+        executor.initialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+        FileSystemUtils.deleteRecursively(inputDir);
+    }
+
+    @Benchmark
+    public void parseBatch() throws Exception {
+        CountDownLatch done = new CountDownLatch(files.size());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (File file : files) {
+            executor.execute(() -> {
+                try (InputStream is = MappedSharedInputStream.open(file)) {
+                    if (streaming) {
+                        StreamingEmailExtractor.parse(is);
+                    } else {
+                        EmailExtractor.parse(new MimeMessage(session, is));
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
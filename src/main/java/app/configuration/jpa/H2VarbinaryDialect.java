@@ -0,0 +1,17 @@
+package app.configuration.jpa;
+
+import org.hibernate.dialect.H2Dialect;
+
+import java.sql.Types;
+
+/**
+ * H2 reports a {@code binary} column as {@code varbinary}, so hibernate's schema validation would reject the
+ * {@code binary} uuid columns created by the flyway migrations. Mapping binary to varbinary, which H2 treats the same,
+ * lets {@code ddl-auto=validate} check the migrations against the entities.
+ */
+public class H2VarbinaryDialect extends H2Dialect {
+
+    public H2VarbinaryDialect() {
+        registerColumnType(Types.BINARY, "varbinary($l)");
+    }
+}
@@ -0,0 +1,88 @@
+package app.domain;
+
+import app.mailextractors.Body;
+import app.mailextractors.ContentType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.lang.Nullable;
+
+import javax.persistence.Embeddable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * What is known about an email body without reading its content, stored with the {@code EmailMessage}.
+ *
+ * <p>The size is the number of bytes in the UTF-8 encoded content and the etag is the SHA-256 of those bytes, which
+ * is all {@code /api/emails/{id}/body} needs to answer conditional and range requests.</p>
+ */
+@Embeddable
+public class BodyMetadata {
+    private ContentType contentType;
+    private Long size;
+
+    @JsonIgnore
+    private String etag;
+
+    private BodyMetadata() {
+    }
+
+    public BodyMetadata(ContentType contentType, Long size, String etag) {
+        this.contentType = contentType;
+        this.size = size;
+        this.etag = etag;
+    }
+
+    public static BodyMetadata of(Body body) {
+        byte[] content = body.getContent() == null ?
+                new byte[0] : body.getContent().getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            return new BodyMetadata(body.getContentType(), (long) content.length,
+                    Base64.getUrlEncoder().withoutPadding().encodeToString(hash));
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    public ContentType getContentType() {
+        return contentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    @JsonIgnore
+    public String getEtag() {
+        return etag;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BodyMetadata that = (BodyMetadata) o;
+        return Objects.equals(contentType, that.contentType) &&
+                Objects.equals(size, that.size) &&
+                Objects.equals(etag, that.etag);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(contentType, size, etag);
+    }
+
+    @Override
+    public String toString() {
+        return "BodyMetadata{" +
+                "contentType=" + contentType +
+                ", size=" + size +
+                ", etag='" + etag + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,58 @@
+package app.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * The content of an {@code EmailMessage} body, kept in its own table so loading emails never reads it. It shares
+ * the id of its {@code EmailMessage}.
+ */
+@Entity
+@Table(name = "email_body")
+public class EmailBody {
+    @Id
+    private UUID id;
+
+    @Column(columnDefinition = "clob")
+    private String content;
+
+    protected EmailBody() {
+    }
+
+    public EmailBody(UUID id, String content) {
+        this.id = id;
+        this.content = content;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EmailBody emailBody = (EmailBody) o;
+        return Objects.equals(id, emailBody.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "EmailBody{" +
+                "id=" + id +
+                '}';
+    }
+}
@@ -2,20 +2,46 @@ package app.domain;
 
 import app.mailextractors.Body;
 import app.mailextractors.EmailAttachment;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import org.springframework.lang.Nullable;
 
 import javax.persistence.*;
+import java.io.File;
 import java.util.*;
 
+/**
+ * The collections are fetched with {@code FetchMode.SUBSELECT} so listing N emails loads each collection for all of
+ * them in one query rather than one query per email. Streamed emails, see
+ * {@code EmailMessageRepositoryCustom#forEachEmail}, can't be subselected so are fetched {@link #BATCH_SIZE} at a time.
+ *
+ * <p>Table names are fixed as {@code EmailMessageRepositoryImpl} deletes from them directly.</p>
+ *
+ * <p>The body content is a lazily loaded {@link EmailBody} in its own table, listing emails only reads the
+ * {@link BodyMetadata}. The content is served by {@code /api/emails/{id}/body}.</p>
+ *
+ * <p>The to, cc and bcc addresses are also kept in {@code recipients} as bare lower case addresses such as
+ * {@code alice@x.com}, indexed so the latest emails to an address are found without scanning every email.</p>
+ *
+ * <p>The {@code size} and {@code sourceFile} are kept for {@code EmailRetention}, the size being the body plus each
+ * attachment as that is what's kept of an email once it's read.</p>
+ */
 @Entity
+@Table(name = "email_message", indexes = @Index(name = "idx_email_message_sent_date_id", columnList = "sentDate, id"))
 @AttributeOverrides({
         @AttributeOverride(
-                name = "body.contentType.mediaType",
+                name = "bodyMetadata.contentType.mediaType",
                 column = @Column(name = "body_content_media_type")
-        )
+        ),
+        @AttributeOverride(name = "bodyMetadata.size", column = @Column(name = "body_size")),
+        @AttributeOverride(name = "bodyMetadata.etag", column = @Column(name = "body_etag"))
 })
 public class EmailMessage {
+    public static final int BATCH_SIZE = 100;
+
     @Id
     private UUID id;
 
@@ -25,12 +51,24 @@ public class EmailMessage {
     // cant use 'from' as its a reserved sql keyword
     @JsonProperty("from")
     @ElementCollection
+    @CollectionTable(name = "email_message_from_who")
+    @Fetch(FetchMode.SUBSELECT)
+    @BatchSize(size = BATCH_SIZE)
     private Set<String> fromWho;
 
     @ElementCollection
+    @CollectionTable(name = "email_message_reply_to")
+    @Fetch(FetchMode.SUBSELECT)
+    @BatchSize(size = BATCH_SIZE)
     private Set<String> replyTo;
 
-    private Body body;
+    @Nullable
+    private BodyMetadata bodyMetadata;
+
+    @JsonIgnore
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "body_id")
+    private EmailBody bodyContent;
 
     private Date receivedDate;
     private Date sentDate;
@@ -38,19 +76,52 @@ public class EmailMessage {
     private String description;
 
     @ElementCollection
+    @CollectionTable(name = "email_message_to_recipients")
+    @Fetch(FetchMode.SUBSELECT)
+    @BatchSize(size = BATCH_SIZE)
     private Set<String> toRecipients;
 
     @ElementCollection
+    @CollectionTable(name = "email_message_cc_recipients")
+    @Fetch(FetchMode.SUBSELECT)
+    @BatchSize(size = BATCH_SIZE)
     private Set<String> ccRecipients;
 
     @ElementCollection
+    @CollectionTable(name = "email_message_bcc_recipients")
+    @Fetch(FetchMode.SUBSELECT)
+    @BatchSize(size = BATCH_SIZE)
     private Set<String> bccRecipients;
 
+    @JsonIgnore
+    @ElementCollection
+    @CollectionTable(name = "email_message_recipients", indexes = @Index(
+            name = "idx_email_message_recipients_address", columnList = "address, email_message_id"))
+    @Column(name = "address")
+    private Set<String> recipients;
+
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinTable(name = "email_message_attachments")
+    @Fetch(FetchMode.SUBSELECT)
+    @BatchSize(size = BATCH_SIZE)
     private Set<EmailAttachment> attachments;
 
     private boolean read;
 
+    @JsonIgnore
+    private long size;
+
+    // The email file this email was read from, if any.
+    @JsonIgnore
+    @Nullable
+    @Column(length = 1024)
+    private String sourceFile;
+
+    // When the email reached this app in epoch millis, 0 if unknown. Only used to measure delivery latency.
+    @JsonIgnore
+    @Transient
+    private transient long arrivedAt;
+
     private EmailMessage() {
     }
 
@@ -63,15 +134,50 @@ public class EmailMessage {
         this.subject = subject;
         this.fromWho = fromWho;
         this.replyTo = replyTo;
-        this.body = body;
+        if (body != null) {
+            this.bodyMetadata = BodyMetadata.of(body);
+            this.bodyContent = new EmailBody(id, body.getContent());
+        }
         this.receivedDate = receivedDate;
         this.sentDate = sentDate;
         this.description = description;
         this.toRecipients = toRecipients;
         this.ccRecipients = ccRecipients;
         this.bccRecipients = bccRecipients;
+        this.recipients = new HashSet<>();
+        for (Set<String> addresses : Arrays.asList(toRecipients, ccRecipients, bccRecipients)) {
+            if (addresses != null) {
+                addresses.forEach(address -> recipients.add(recipientAddress(address)));
+            }
+        }
         this.attachments = attachments;
         this.read = read;
+        this.size = size(bodyMetadata, attachments);
+    }
+
+    /**
+     * @return The address without the name in lower case, {@code Alice <Alice@x.com>} is {@code alice@x.com}.
+     */
+    public static String recipientAddress(String recipient) {
+        int start = recipient.indexOf('<');
+        int end = recipient.indexOf('>', start + 1);
+        String address = start >= 0 && end > start ? recipient.substring(start + 1, end) : recipient;
+        return address.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long size(BodyMetadata bodyMetadata, Set<EmailAttachment> attachments) {
+        long size = 0;
+        if (bodyMetadata != null && bodyMetadata.getSize() != null) {
+            size += bodyMetadata.getSize();
+        }
+        if (attachments != null) {
+            for (EmailAttachment attachment : attachments) {
+                if (attachment.getSize() != null) {
+                    size += attachment.getSize();
+                }
+            }
+        }
+        return size;
     }
 
     public UUID getId() {
@@ -91,8 +197,22 @@ public class EmailMessage {
         return replyTo;
     }
 
+    /**
+     * Reads the body content if it isn't loaded yet, use {@link #getBodyMetadata()} when the content isn't needed.
+     */
+    @Nullable
+    @JsonIgnore
     public Body getBody() {
-        return body;
+        if (bodyContent == null) {
+            return null;
+        }
+        return new Body(bodyContent.getContent(), bodyMetadata == null ? null : bodyMetadata.getContentType());
+    }
+
+    @Nullable
+    @JsonProperty("body")
+    public BodyMetadata getBodyMetadata() {
+        return bodyMetadata;
     }
 
     @Nullable
@@ -125,6 +245,14 @@ public class EmailMessage {
         return bccRecipients;
     }
 
+    /**
+     * @return Every to, cc and bcc address, see {@link #recipientAddress(String)}.
+     */
+    @JsonIgnore
+    public Set<String> getRecipients() {
+        return recipients;
+    }
+
     public Set<EmailAttachment> getAttachments() {
         return attachments;
     }
@@ -141,6 +269,39 @@ public class EmailMessage {
         read = false;
     }
 
+    /**
+     * @return The size of the body plus the size of each attachment in bytes.
+     */
+    @JsonIgnore
+    public long getSize() {
+        return size;
+    }
+
+    @Nullable
+    @JsonIgnore
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Remembers the email file this email was read from so it can be deleted along with the email.
+     */
+    public void sourceFile(File sourceFile) {
+        this.sourceFile = sourceFile.getPath();
+    }
+
+    /**
+     * @return When the email arrived in epoch millis, 0 once the email has been loaded back from the database.
+     */
+    @JsonIgnore
+    public long getArrivedAt() {
+        return arrivedAt;
+    }
+
+    public void arrivedAt(long arrivedAt) {
+        this.arrivedAt = arrivedAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -161,7 +322,7 @@ public class EmailMessage {
                 ", subject='" + subject + '\'' +
                 ", fromWho=" + fromWho +
                 ", replyTo=" + replyTo +
-                ", body=" + body +
+                ", bodyMetadata=" + bodyMetadata +
                 ", receivedDate=" + receivedDate +
                 ", sentDate=" + sentDate +
                 ", description='" + description + '\'' +
@@ -0,0 +1,208 @@
+package app.integration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.lang.Nullable;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {@code ConcurrentMetadataStore} holding at most {@code maxEntries} entries in least recently used order.
+ * Entries that haven't been accessed within {@code maxIdle} are evicted as well, so memory stays flat no matter how
+ * long the application runs.
+ *
+ * <p>When a file is supplied, the entries are loaded from it on creation and written back on {@link #flush()} and
+ * {@link #close()} so the store survives restarts.</p>
+ */
+public class BoundedMetadataStore implements ConcurrentMetadataStore, Flushable, Closeable {
+    private final Logger logger = LoggerFactory.getLogger(BoundedMetadataStore.class);
+
+    private final int maxEntries;
+    private final long maxIdleMillis;
+    private final File file;
+    private final Clock clock;
+
+    private final LinkedHashMap<String, StoredValue> entries;
+
+    private boolean dirty;
+
+    public BoundedMetadataStore(int maxEntries, Duration maxIdle, @Nullable File file) {
+        this(maxEntries, maxIdle, file, Clock.systemUTC());
+    }
+
+    BoundedMetadataStore(int maxEntries, Duration maxIdle, @Nullable File file, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.maxIdleMillis = maxIdle.toMillis();
+        this.file = file;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, StoredValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredValue> eldest) {
+                return size() > BoundedMetadataStore.this.maxEntries;
+            }
+        };
+        load();
+    }
+
+    @Override
+    public synchronized void put(String key, String value) {
+        entries.put(key, new StoredValue(value, clock.millis()));
+        changed();
+    }
+
+    @Override
+    @Nullable
+    public synchronized String get(String key) {
+        StoredValue entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.touch(clock.millis());
+        return entry.value;
+    }
+
+    @Override
+    @Nullable
+    public synchronized String remove(String key) {
+        StoredValue entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        changed();
+        return entry.value;
+    }
+
+    @Override
+    @Nullable
+    public synchronized String putIfAbsent(String key, String value) {
+        String existing = get(key);
+        if (existing == null) {
+            put(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public synchronized boolean replace(String key, String oldValue, String newValue) {
+        StoredValue entry = entries.get(key);
+        if (entry == null || !Objects.equals(entry.value, oldValue)) {
+            return false;
+        }
+        put(key, newValue);
+        return true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the entries to the backing file if anything changed since the last flush. Does nothing for a store
+     * without a file.
+     */
+    @Override
+    public synchronized void flush() {
+        evictIdle();
+        if (file == null || !dirty) {
+            return;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, StoredValue> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue().value);
+                out.writeLong(e.getValue().lastAccess);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write metadata store " + tmp + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            move(tmp, file);
+            dirty = false;
+        } catch (IOException e) {
+            logger.warn("Unable to replace metadata store " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void changed() {
+        dirty = true;
+        evictIdle();
+    }
+
+    /**
+     * Entries are kept in access order so the idle entries are always at the head.
+     */
+    private void evictIdle() {
+        long oldest = clock.millis() - maxIdleMillis;
+        Iterator<StoredValue> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastAccess >= oldest) {
+                return;
+            }
+            it.remove();
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                String value = in.readUTF();
+                long lastAccess = in.readLong();
+                entries.put(key, new StoredValue(value, lastAccess));
+            }
+            evictIdle();
+            logger.info("Loaded " + entries.size() + " entries from metadata store " + file);
+        } catch (IOException e) {
+            logger.warn("Unable to read metadata store " + file + ", starting empty: " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class StoredValue {
+        private final String value;
+        private long lastAccess;
+
+        private StoredValue(String value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+
+        private void touch(long now) {
+            lastAccess = now;
+        }
+    }
+}
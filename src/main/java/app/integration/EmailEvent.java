@@ -0,0 +1,89 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What server sent event clients are told about a new email. The body and attachments are left out so every event
+ * stays small, clients fetch the full email from {@code /api/emails/{id}} when they need it.
+ */
+public class EmailEvent {
+    private final UUID id;
+    private final String subject;
+    private final Date sentDate;
+    private final long size;
+
+    @JsonProperty("from")
+    private final Set<String> fromWho;
+
+    public EmailEvent(UUID id, String subject, Set<String> fromWho, Date sentDate, long size) {
+        this.id = id;
+        this.subject = subject;
+        this.fromWho = fromWho;
+        this.sentDate = sentDate;
+        this.size = size;
+    }
+
+    /**
+     * The size is the size of the body plus the size of each attachment, as the size of the original
+     * email file isn't kept.
+     */
+    public static EmailEvent of(EmailMessage emailMessage) {
+        return new EmailEvent(emailMessage.getId(), emailMessage.getSubject(),
+                new HashSet<>(emailMessage.getFromWho()), emailMessage.getSentDate(), emailMessage.getSize());
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Set<String> getFromWho() {
+        return fromWho;
+    }
+
+    public Date getSentDate() {
+        return sentDate;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EmailEvent that = (EmailEvent) o;
+        return size == that.size &&
+                Objects.equals(id, that.id) &&
+                Objects.equals(subject, that.subject) &&
+                Objects.equals(fromWho, that.fromWho) &&
+                Objects.equals(sentDate, that.sentDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, subject, fromWho, sentDate, size);
+    }
+
+    @Override
+    public String toString() {
+        return "EmailEvent{" +
+                "id=" + id +
+                ", subject='" + subject + '\'' +
+                ", fromWho=" + fromWho +
+                ", sentDate=" + sentDate +
+                ", size=" + size +
+                '}';
+    }
+}
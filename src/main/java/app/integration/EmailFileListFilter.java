@@ -0,0 +1,28 @@
+package app.integration;
+
+import org.springframework.integration.file.filters.FileSystemPersistentAcceptOnceFileListFilter;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+
+import java.io.File;
+
+/**
+ * Accepts each email file once based on its path, size and last modified time. A file is only accepted again
+ * if it is rewritten with a different size or modification time.
+ *
+ * <p>Unlike {@code AcceptOnceFileListFilter} the seen files are kept in a {@code ConcurrentMetadataStore} which
+ * can be bounded and persisted, see {@link BoundedMetadataStore}.</p>
+ */
+public class EmailFileListFilter extends FileSystemPersistentAcceptOnceFileListFilter {
+
+    public EmailFileListFilter(ConcurrentMetadataStore store) {
+        super(store, "email:");
+    }
+
+    /**
+     * The store value only holds the last modified time so the size is made part of the key.
+     */
+    @Override
+    protected String buildKey(File file) {
+        return super.buildKey(file) + ":" + file.length();
+    }
+}
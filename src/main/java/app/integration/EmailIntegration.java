@@ -1,58 +1,93 @@
 package app.integration;
 
 import app.domain.EmailMessage;
+import app.jfr.EmailFileEvent;
+import app.jfr.FlightRecording;
+import app.mailextractors.AttachmentStore;
 import app.mailextractors.EmailExtractor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import app.mailextractors.MappedSharedInputStream;
+import app.mailextractors.StreamingEmailExtractor;
+import app.web.EmailIndex;
+import app.web.EmailWaiters;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
+import org.springframework.integration.aggregator.TimeoutCountSequenceSizeReleaseStrategy;
 import org.springframework.integration.dsl.*;
 import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.FileReadingMessageSource.WatchEventType;
 import org.springframework.integration.file.dsl.Files;
+import org.springframework.integration.file.filters.ChainFileListFilter;
+import org.springframework.integration.file.filters.SimplePatternFileListFilter;
 import org.springframework.integration.handler.LoggingHandler;
-import org.springframework.integration.jpa.dsl.Jpa;
-import org.springframework.integration.jpa.support.PersistMode;
+import org.springframework.integration.util.DynamicPeriodicTrigger;
 import org.springframework.integration.transformer.GenericTransformer;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.SubscribableChannel;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 import javax.persistence.EntityManagerFactory;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 @Configuration
 @Profile("!test")
 public class EmailIntegration {
-    private final Logger logger = LoggerFactory.getLogger(EmailIntegration.class);
-
     private final Session session = Session.getDefaultInstance(new Properties());
 
     private EntityManagerFactory entityManagerFactory;
 
-    private Map<String, SseEmitter> emitters = Collections.synchronizedMap(new HashMap<>());
+    // Parse email files in a single pass without building a MimeMessage, see StreamingEmailExtractor.
+    private final boolean streamingParser;
+
+    private final SseBroadcaster sseBroadcaster;
+
+    // Where attachment content is written while parsing, see FileAttachmentStore.
+    private final AttachmentStore attachmentStore;
+
+    private final EmailIndex emailIndex;
 
-    // Prevent server sent events from timing out.
-    private final long NO_TIMEOUT = -1;
+    private final MeterRegistry meterRegistry;
+    private final ParseMetrics parseMetrics;
 
-    public EmailIntegration(EntityManagerFactory entityManagerFactory) {
+    public EmailIntegration(EntityManagerFactory entityManagerFactory,
+                            @Value("${email.parser.streaming:false}") boolean streamingParser,
+                            SseBroadcaster sseBroadcaster,
+                            AttachmentStore attachmentStore,
+                            EmailIndex emailIndex,
+                            MeterRegistry meterRegistry) {
         this.entityManagerFactory = entityManagerFactory;
+        this.streamingParser = streamingParser;
+        this.sseBroadcaster = sseBroadcaster;
+        this.attachmentStore = attachmentStore;
+        this.emailIndex = emailIndex;
+        this.meterRegistry = meterRegistry;
+        this.parseMetrics = new ParseMetrics("file", meterRegistry);
     }
 
     /**
@@ -63,36 +98,27 @@ public class EmailIntegration {
      * would be a unique token issued by the server on sign in or a JWT token etc.
      *
      * <p>https://stackoverflow.com/questions/34530544/java-spring-sseemitter-responsebodyemitter-detect-browser-reloads
-     */
-    @GetMapping(value = "/api/stream/emails/{id}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter emailStream(@PathVariable("id") String id) {
-        SseEmitter sseEmitter = new SseEmitter(NO_TIMEOUT);
-        emitters.put(id, sseEmitter);
-        return sseEmitter;
-    }
-
-    /**
-     * Emails sent into the email channel are sent out to each server sent event subscriber.
+     *
+     * <p>The browser sends the {@code Last-Event-ID} header when it reconnects by itself, the events it missed are
+     * sent first. An id that can't be read is treated as too old to resume from.</p>
      *
      * <p>The reason this is not done through the new WebFlux api is because its not a reactive application using
      * the WebFlux dependencies. We are using spring data rest and the old mvc way of doing things and the 2 dependencies
      * don't work with each other so you cant mix and match from what I understand.
+     *
+     * <p>Emails are broadcast by the {@link EmailMessageWriter} once they have been saved, see {@link SseBroadcaster}.
      */
-    @Bean
-    public IntegrationFlow sseFlow() {
-        return IntegrationFlows
-                .from(emailChannel())
-                .handle(EmailMessage.class, (emailMessage, headers) -> {
-                    emitters.forEach((id, sseEmitter) -> {
-                        try {
-                            sseEmitter.send(emailMessage);
-                        } catch (Throwable e) {
-                            logger.info("SseEmitter send error: " + e.getMessage());
-                        }
-                    });
-                    return null;
-                })
-                .get();
+    @GetMapping(value = "/api/stream/emails/{id}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter emailStream(@PathVariable("id") String id,
+                                  @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (lastEventId == null) {
+            return sseBroadcaster.subscribe(id);
+        }
+        try {
+            return sseBroadcaster.subscribe(id, Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            return sseBroadcaster.subscribe(id, Long.MIN_VALUE);
+        }
     }
 
     /**
@@ -107,47 +133,209 @@ public class EmailIntegration {
     /**
      * Polls the {@code input-files} directory every {@code poll-rate-seconds} and
      * sends the transformed file into the {@code emailChannel} for consumers to process.
+     *
+     * <p>When {@code email.input.dir.watch} is enabled, new files are detected through file system events using a
+     * {@code WatchService} instead of listing the whole directory on each poll. The poller then only drains the queue of
+     * already detected files which is cheap enough to run every {@code email.input.dir.watch.poll.rate.millis}.
+     * A full rescan of the directory only happens on startup or when the watch service reports an overflow.</p>
+     *
+     * <p>Files are handed over to the {@code emailParserExecutor} so emails are parsed in parallel rather than one at
+     * a time on the poller thread.</p>
+     *
+     * <p>Each poll reads every waiting file oldest first, up to {@code email.input.dir.poll.max.messages}, rather than
+     * one file per poll. With {@code email.input.dir.poll.adaptive} the directory is polled again after
+     * {@code email.input.dir.poll.adaptive.min.millis} while files keep turning up, backing off to
+     * {@code poll-rate-seconds} when it is idle. See {@link IngestPollAdvice}.</p>
+     *
+     * <p>A file is only read once it hasn't been modified for {@code email.input.dir.min.age.millis}, so one still
+     * being written isn't read half written and then again once complete under a new size and modified time. In watch
+     * mode the shorter {@code email.input.dir.watch.min.age.millis} is used instead so new files are still picked up
+     * within a fraction of a second, and a file that is too new is queued again for the next poll.</p>
      */
     @Bean
     public IntegrationFlow incomingEmailsFlow(@Value("${email.input.dir}") File in,
-                                              @Value("${email.input.dir.poll.rate.seconds}") long pollRateSeconds) {
-        return IntegrationFlows.from(Files.inboundAdapter(in)
+                                              @Value("${email.input.dir.poll.rate.seconds}") long pollRateSeconds,
+                                              @Value("${email.input.dir.watch:false}") boolean watch,
+                                              @Value("${email.input.dir.watch.poll.rate.millis:100}") long watchPollRateMillis,
+                                              @Value("${email.input.dir.poll.max.messages:1000}") long maxMessagesPerPoll,
+                                              @Value("${email.input.dir.poll.adaptive:false}") boolean adaptive,
+                                              @Value("${email.input.dir.poll.adaptive.min.millis:1000}") long minPollMillis,
+                                              @Value("${email.input.dir.min.age.millis:1000}") long minAgeMillis,
+                                              @Value("${email.input.dir.watch.min.age.millis:100}") long watchMinAgeMillis,
+                                              EmailFileListFilter emailFileListFilter,
+                                              ThreadPoolTaskExecutor emailParserExecutor) {
+        DynamicPeriodicTrigger trigger = null;
+        PollerSpec poller;
+        if (watch) {
+            poller = Pollers.fixedDelay(watchPollRateMillis).maxMessagesPerPoll(-1);
+        } else if (adaptive) {
+            trigger = new DynamicPeriodicTrigger(Duration.ofMillis(Math.max(1, minPollMillis)));
+            poller = Pollers.trigger(trigger).maxMessagesPerPoll(maxMessagesPerPoll);
+        } else {
+            poller = Pollers.fixedRate(pollRateSeconds * 1000).maxMessagesPerPoll(maxMessagesPerPoll);
+        }
+        poller.advice(new IngestPollAdvice(trigger, Duration.ofMillis(Math.max(1, minPollMillis)),
+                Duration.ofSeconds(pollRateSeconds), watch ? -1 : maxMessagesPerPoll, meterRegistry,
+                Clock.systemUTC()));
+
+        return IntegrationFlows.from(Files.inboundAdapter(in, Comparator.comparingLong(File::lastModified))
                 .autoCreateDirectory(false)
-                .preventDuplicates(true)
-                .patternFilter("*.eml"), c -> c.poller(Pollers.fixedRate(pollRateSeconds * 1000)))
+                .filter(new ChainFileListFilter<>(Arrays.asList(
+                        new SimplePatternFileListFilter("*.eml"),
+                        new MinAgeFileListFilter(Duration.ofMillis(watch ? watchMinAgeMillis : minAgeMillis)),
+                        emailFileListFilter)))
+                .useWatchService(watch)
+                .watchEvents(WatchEventType.CREATE, WatchEventType.MODIFY), c -> c.poller(poller))
+                .channel(MessageChannels.executor(emailParserExecutor))
                 .transform(File.class, emailFileTransformer())
                 .channel(emailChannel())
                 .log(LoggingHandler.Level.INFO, "test.emailChannel", m -> "emailChannel: " + m.getPayload())
                 .get();
     }
 
+    /**
+     * Parses email files using {@code email.parser.threads} threads, defaulting to the number of available processors.
+     * Once {@code email.parser.queue.capacity} files are waiting to be parsed, the poller blocks until there is space
+     * in the queue rather than reading more files into memory.
+     *
+     * <p>Emails may be published out of order when parsed in parallel. Setting {@code email.parser.ordered} parses
+     * on a single thread so emails are published in the order the files were read.</p>
+     */
+    @Bean
+    public ThreadPoolTaskExecutor emailParserExecutor(@Value("${email.parser.threads:0}") int threads,
+                                                      @Value("${email.parser.queue.capacity:1000}") int queueCapacity,
+                                                      @Value("${email.parser.ordered:false}") boolean ordered) {
+        int poolSize = ordered ? 1 : threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolTaskExecutor executor = parserExecutor(poolSize, queueCapacity);
+        Gauge.builder("email.pipeline.backlog", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Email files read from the input directory waiting to be parsed")
+                .register(meterRegistry);
+        return executor;
+    }
+
+    /**
+     * The executor behind {@link #emailParserExecutor}, also used by the parser throughput benchmark. A task submitted
+     * while the queue is full waits for space rather than being rejected.
+     */
+    public static ThreadPoolTaskExecutor parserExecutor(int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("email-parser-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Email parser is shut down");
+            }
+            try {
+                pool.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+        return executor;
+    }
+
+    /**
+     * Remembers which email files have already been read so they are not processed twice. The seen files are held in
+     * a bounded store and written to {@code email.metadata.dir} when set, which prevents every existing email from
+     * being read again after a restart.
+     */
+    @Bean
+    public EmailFileListFilter emailFileListFilter(BoundedMetadataStore emailFileMetadataStore) {
+        return new EmailFileListFilter(emailFileMetadataStore);
+    }
+
+    @Bean
+    public BoundedMetadataStore emailFileMetadataStore(@Value("${email.metadata.dir:}") String metadataDir,
+                                                       @Value("${email.metadata.max.entries:100000}") int maxEntries,
+                                                       @Value("${email.metadata.max.idle.days:30}") long maxIdleDays,
+                                                       @Value("${email.metadata.flush.rate.seconds:5}") long flushRateSeconds,
+                                                       TaskScheduler taskScheduler) {
+        File file = metadataDir.isEmpty() ? null : new File(metadataDir, ".fakesmtp-web-metadata");
+        BoundedMetadataStore store = new BoundedMetadataStore(maxEntries, Duration.ofDays(maxIdleDays), file);
+        if (file != null) {
+            taskScheduler.scheduleWithFixedDelay(store::flush, Duration.ofSeconds(flushRateSeconds));
+        }
+        return store;
+    }
+
     /**
      * When the {@code emailChannel} publishes a {@code Message<EmailMessage>}, save it to the
      * database which is exposed as a REST service through a repository.
+     *
+     * <p>Emails are collected into batches of up to {@code email.persist.batch.size} emails, or however many arrived
+     * within {@code email.persist.batch.timeout.millis}, which are saved in a single transaction.</p>
      */
     @Bean
-    public IntegrationFlow databaseFlow() {
+    public IntegrationFlow databaseFlow(@Value("${email.persist.batch.size:100}") int batchSize,
+                                        @Value("${email.persist.batch.timeout.millis:50}") long batchTimeoutMillis,
+                                        EmailMessageWriter emailMessageWriter) {
         return IntegrationFlows.from(emailChannel())
-                .handle(Jpa.outboundAdapter(entityManagerFactory)
-                        .entityClass(EmailMessage.class)
-                        .persistMode(PersistMode.PERSIST), ConsumerEndpointSpec::transactional)
+                .aggregate(a -> a
+                        .correlationStrategy(m -> EmailMessage.class.getName())
+                        .releaseStrategy(new TimeoutCountSequenceSizeReleaseStrategy(batchSize, batchTimeoutMillis))
+                        .groupTimeout(batchTimeoutMillis)
+                        .sendPartialResultOnExpiry(true)
+                        .expireGroupsUponCompletion(true)
+                        .expireGroupsUponTimeout(true))
+                .<List<EmailMessage>>handle((emails, headers) -> {
+                    emailMessageWriter.write(emails);
+                    return null;
+                })
                 .get();
     }
 
+    @Bean
+    public EmailMessageWriter emailMessageWriter(PlatformTransactionManager transactionManager,
+                                                 EmailWaiters emailWaiters) {
+        return new EmailMessageWriter(entityManagerFactory, transactionManager, emailIndex, emailWaiters,
+                sseBroadcaster, meterRegistry);
+    }
+
+    /**
+     * Emails saved while the search index wasn't running, or the whole index if it is kept in memory while the
+     * emails are not, are indexed again once the application has started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void updateEmailIndex() {
+        emailIndex.rebuildIfOutOfDate();
+    }
+
     /**
      * Transforms a raw email file which FakeSMTP produces (.eml / RFC822 format) into a
      * {@code EmailMessage} domain object.
+     *
+     * <p>The file is opened as a {@code SharedInputStream} so {@code MimeMessage} references the body parts within
+     * the file contents rather than copying them.</p>
      */
     private GenericTransformer<File, Message<EmailMessage>> emailFileTransformer() {
         return (File source) -> {
-            try (InputStream is = new FileInputStream(source)) {
-                MimeMessage message = new MimeMessage(session, is);
-                EmailMessage meta = EmailExtractor.parse(message);
+            EmailFileEvent fileEvent = FlightRecording.AVAILABLE ? new EmailFileEvent() : null;
+            if (fileEvent != null) {
+                fileEvent.begin();
+            }
+            try (InputStream is = MappedSharedInputStream.open(source)) {
+                EmailMessage meta = parseMetrics.parse(() -> streamingParser ?
+                        StreamingEmailExtractor.parse(is, attachmentStore) :
+                        EmailExtractor.parse(new MimeMessage(session, is), attachmentStore));
+                meta.sourceFile(source);
+                meta.arrivedAt(source.lastModified());
+                if (fileEvent != null) {
+                    fileEvent.read(source, meta.getId().toString());
+                }
 
                 return MessageBuilder.withPayload(meta)
                         .setHeader(FileHeaders.FILENAME, meta.getId().toString())
                         .build();
             } catch (Exception e) {
+                if (fileEvent != null) {
+                    fileEvent.read(source, null);
+                }
                 ReflectionUtils.rethrowRuntimeException(e);
             }
             return null;
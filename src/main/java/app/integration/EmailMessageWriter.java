@@ -0,0 +1,142 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import app.jfr.EmailPersistEvent;
+import app.jfr.FlightRecording;
+import app.web.EmailIndex;
+import app.web.EmailWaiters;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists batches of emails in a single transaction so hibernate can group the inserts into JDBC batches
+ * (see {@code hibernate.jdbc.batch_size}).
+ *
+ * <p>If the batch fails, each email is retried in its own transaction so one bad email doesn't lose the
+ * rest of the batch.</p>
+ *
+ * <p>Saved emails are added to the {@link EmailIndex}, passed to the {@link EmailWaiters} and sent to server sent
+ * event clients through the {@link SseBroadcaster} once their transaction has committed, so a client fetching an email
+ * it was just told about always finds it. Emails that couldn't be saved are never announced.</p>
+ *
+ * <p>The {@code email.pipeline.persist} timer records each write, {@code email.pipeline.persisted} counts the emails
+ * saved and failed, and {@code email.pipeline.latency} with {@code stage=committed} records how long after arriving
+ * each email was committed. The {@code stage=delivered} latency recorded by the {@link SseBroadcaster} is measured from
+ * the same arrival time and only starts after the commit, so it is never shorter.</p>
+ */
+public class EmailMessageWriter {
+    private final Logger logger = LoggerFactory.getLogger(EmailMessageWriter.class);
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final EmailIndex emailIndex;
+    private final EmailWaiters emailWaiters;
+    private final SseBroadcaster sseBroadcaster;
+
+    private final Timer persists;
+    private final Counter persisted;
+    private final Counter failed;
+    private final Timer committedLatency;
+
+    public EmailMessageWriter(EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager,
+                              EmailIndex emailIndex, EmailWaiters emailWaiters, SseBroadcaster sseBroadcaster,
+                              MeterRegistry meterRegistry) {
+        this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.emailIndex = emailIndex;
+        this.emailWaiters = emailWaiters;
+        this.sseBroadcaster = sseBroadcaster;
+
+        persists = Timer.builder("email.pipeline.persist")
+                .description("Time to save a batch of emails")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        persisted = persistedCounter("saved", meterRegistry);
+        failed = persistedCounter("failed", meterRegistry);
+        committedLatency = Timer.builder("email.pipeline.latency")
+                .description("Time from an email arriving until it reached each stage")
+                .tag("stage", "committed")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Counter persistedCounter(String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("email.pipeline.persisted")
+                .description("Emails saved to the database")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public void write(List<EmailMessage> emails) {
+        saved(persists.record(() -> persist(emails)));
+    }
+
+    /**
+     * @return The emails saved.
+     */
+    private List<EmailMessage> persist(List<EmailMessage> emails) {
+        EmailPersistEvent event = FlightRecording.AVAILABLE ? new EmailPersistEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> emails.forEach(entityManager::persist));
+            if (event != null) {
+                event.persisted(emails.size(), emails.size(), false);
+            }
+            return emails;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to save batch of " + emails.size() + " emails, saving individually: " + e.getMessage());
+            List<EmailMessage> saved = new ArrayList<>();
+            for (EmailMessage email : emails) {
+                if (writeOne(email)) {
+                    saved.add(email);
+                }
+            }
+            if (event != null) {
+                event.persisted(emails.size(), saved.size(), true);
+            }
+            return saved;
+        }
+    }
+
+    private void saved(List<EmailMessage> emails) {
+        long now = System.currentTimeMillis();
+        for (EmailMessage email : emails) {
+            if (email.getArrivedAt() > 0) {
+                committedLatency.record(now - email.getArrivedAt(), TimeUnit.MILLISECONDS);
+            }
+        }
+        persisted.increment(emails.size());
+        emailIndex.add(emails);
+        emailWaiters.saved(emails);
+        // Broadcast with the same arrival time after committed is recorded, so each email's delivered latency always
+        // includes its committed latency.
+        for (EmailMessage email : emails) {
+            sseBroadcaster.broadcast(EmailEvent.of(email), email.getArrivedAt());
+        }
+    }
+
+    private boolean writeOne(EmailMessage email) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> entityManager.persist(email));
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Unable to save email " + email.getId() + ": " + e.getMessage());
+            failed.increment();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package app.integration;
+
+import app.mailextractors.FileAttachmentStore;
+import app.web.EmailFootprint;
+import app.web.EmailIndex;
+import app.web.EmailMessageRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes the oldest emails once they are older than {@code email.retention.max.age.hours}, there are more than
+ * {@code email.retention.max.count} emails, or their sizes add up to more than {@code email.retention.max.bytes}.
+ * A limit of 0 is no limit, and nothing is scheduled when there are no limits.
+ *
+ * <p>Every {@code email.retention.rate.seconds} the oldest emails by sent date are deleted in batches of
+ * {@code email.retention.batch.size} with one delete per table, along with their {@link EmailIndex} entries, the
+ * email files they were read from and any attachment content no other email refers to.</p>
+ *
+ * <p>The number of emails evicted by each run is recorded per limit in the {@code email.retention.evicted}
+ * summary.</p>
+ */
+@Component
+@Profile("!test")
+public class EmailRetention implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(EmailRetention.class);
+
+    private final EmailMessageRepository repository;
+    private final FileAttachmentStore attachmentStore;
+    private final EmailIndex emailIndex;
+    private final long maxCount;
+    private final Duration maxAge;
+    private final long maxBytes;
+    private final int batchSize;
+    private final Clock clock;
+
+    private final DistributionSummary evictedByAge;
+    private final DistributionSummary evictedByCount;
+    private final DistributionSummary evictedByBytes;
+
+    private final ScheduledFuture<?> runs;
+
+    public EmailRetention(@Value("${email.retention.max.count:0}") long maxCount,
+                          @Value("${email.retention.max.age.hours:0}") long maxAgeHours,
+                          @Value("${email.retention.max.bytes:0}") long maxBytes,
+                          @Value("${email.retention.batch.size:500}") int batchSize,
+                          @Value("${email.retention.rate.seconds:60}") long rateSeconds,
+                          EmailMessageRepository repository,
+                          FileAttachmentStore attachmentStore,
+                          EmailIndex emailIndex,
+                          TaskScheduler taskScheduler,
+                          MeterRegistry meterRegistry) {
+        this(repository, attachmentStore, emailIndex, maxCount, Duration.ofHours(maxAgeHours), maxBytes, batchSize,
+                Duration.ofSeconds(rateSeconds), taskScheduler, meterRegistry, Clock.systemUTC());
+    }
+
+    EmailRetention(EmailMessageRepository repository, FileAttachmentStore attachmentStore, EmailIndex emailIndex,
+                   long maxCount, Duration maxAge, long maxBytes, int batchSize, Duration rate,
+                   TaskScheduler taskScheduler, MeterRegistry meterRegistry, Clock clock) {
+        this.repository = repository;
+        this.attachmentStore = attachmentStore;
+        this.emailIndex = emailIndex;
+        this.maxCount = maxCount;
+        this.maxAge = maxAge;
+        this.maxBytes = maxBytes;
+        this.batchSize = batchSize;
+        this.clock = clock;
+
+        evictedByAge = evictedSummary("age", meterRegistry);
+        evictedByCount = evictedSummary("count", meterRegistry);
+        evictedByBytes = evictedSummary("bytes", meterRegistry);
+
+        boolean enabled = maxCount > 0 || !maxAge.isZero() || maxBytes > 0;
+        runs = enabled ? taskScheduler.scheduleWithFixedDelay(this::runLogged, rate) : null;
+    }
+
+    private static DistributionSummary evictedSummary(String limit, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("email.retention.evicted")
+                .description("Emails deleted by each retention run")
+                .tag("limit", limit)
+                .register(meterRegistry);
+    }
+
+    private void runLogged() {
+        try {
+            int evicted = run();
+            if (evicted > 0) {
+                logger.info("Retention evicted " + evicted + " emails");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Retention run failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applies each limit in turn, the age first as it may already bring the count and size within their limits.
+     *
+     * @return The number of emails evicted.
+     */
+    synchronized int run() {
+        int byAge = maxAge.isZero() ? 0 : evictSentBefore(new Date(clock.millis() - maxAge.toMillis()));
+        int byCount = maxCount > 0 ? evictOverCount() : 0;
+        int byBytes = maxBytes > 0 ? evictOverBytes() : 0;
+
+        evictedByAge.record(byAge);
+        evictedByCount.record(byCount);
+        evictedByBytes.record(byBytes);
+        return byAge + byCount + byBytes;
+    }
+
+    private int evictSentBefore(Date sentBefore) {
+        int evicted = 0;
+        List<EmailFootprint> batch;
+        do {
+            batch = repository.findOldestSentBefore(sentBefore, PageRequest.of(0, batchSize));
+            evict(batch);
+            evicted += batch.size();
+        } while (batch.size() == batchSize);
+        return evicted;
+    }
+
+    private int evictOverCount() {
+        int evicted = 0;
+        long excess = repository.count() - maxCount;
+        while (excess > 0) {
+            List<EmailFootprint> batch = repository.findOldest(PageRequest.of(0, (int) Math.min(batchSize, excess)));
+            if (batch.isEmpty()) {
+                break;
+            }
+            evict(batch);
+            evicted += batch.size();
+            excess -= batch.size();
+        }
+        return evicted;
+    }
+
+    private int evictOverBytes() {
+        int evicted = 0;
+        long excess = repository.totalSize() - maxBytes;
+        while (excess > 0) {
+            List<EmailFootprint> batch = repository.findOldest(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            // Only as many of the oldest as it takes to get within the limit.
+            int end = 0;
+            while (end < batch.size() && excess > 0) {
+                excess -= batch.get(end++).getSize();
+            }
+            List<EmailFootprint> evicting = batch.subList(0, end);
+            evict(evicting);
+            evicted += evicting.size();
+        }
+        return evicted;
+    }
+
+    private void evict(List<EmailFootprint> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = emails.stream().map(EmailFootprint::getId).collect(Collectors.toList());
+        Set<String> unusedHashes = repository.deleteEmails(ids);
+        emailIndex.delete(ids);
+
+        for (EmailFootprint email : emails) {
+            if (email.getSourceFile() != null) {
+                try {
+                    Files.deleteIfExists(Paths.get(email.getSourceFile()));
+                } catch (IOException e) {
+                    logger.warn("Unable to delete email file " + email.getSourceFile() + ": " + e.getMessage());
+                }
+            }
+        }
+        for (String hash : unusedHashes) {
+            try {
+                attachmentStore.delete(hash);
+            } catch (IOException e) {
+                logger.warn("Unable to delete attachment " + hash + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (runs != null) {
+            runs.cancel(false);
+        }
+    }
+}
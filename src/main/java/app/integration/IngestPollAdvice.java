@@ -0,0 +1,113 @@
+package app.integration;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.integration.aop.ReceiveMessageAdvice;
+import org.springframework.integration.util.DynamicPeriodicTrigger;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches each file the {@code incomingEmailsFlow} poller receives to report the {@code email.ingest.lag}, the age in
+ * seconds of the oldest email file not yet picked up. Files are received oldest first, so that is the age of the file
+ * just received, and 0 once a poll finds nothing left. The {@code email.pipeline.poll} timer records how long each
+ * file took to receive, which includes listing the directory whenever the files already listed have all been
+ * received.
+ *
+ * <p>Given a trigger, the time until the next poll is also adapted. After a poll that found files it is
+ * {@code minInterval} so a backlog is drained quickly, after each poll that found none it doubles up to
+ * {@code maxInterval} so an idle directory is hardly polled.</p>
+ *
+ * <p>The poller calls {@link #afterReceive} for each file up to {@code maxMessagesPerPoll} and then once more with
+ * {@code null} if it ran out of files, which is how the end of a poll is detected.</p>
+ */
+public class IngestPollAdvice implements ReceiveMessageAdvice {
+    @Nullable
+    private final DynamicPeriodicTrigger trigger;
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final long maxMessagesPerPoll;
+    private final Clock clock;
+
+    private final Timer receives;
+
+    // Only used by the poller which never runs two polls at once.
+    private long received;
+    private long receiveStart;
+
+    private volatile long lagMillis;
+
+    public IngestPollAdvice(@Nullable DynamicPeriodicTrigger trigger, Duration minInterval, Duration maxInterval,
+                            long maxMessagesPerPoll, MeterRegistry meterRegistry, Clock clock) {
+        this.trigger = trigger;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.maxMessagesPerPoll = maxMessagesPerPoll;
+        this.clock = clock;
+
+        Gauge.builder("email.ingest.lag", this, advice -> advice.lagMillis / 1000.0)
+                .description("Age of the oldest email file not yet read")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        receives = Timer.builder("email.pipeline.poll")
+                .description("Time to receive each email file from the input directory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean beforeReceive(Object source) {
+        receiveStart = System.nanoTime();
+        return true;
+    }
+
+    @Override
+    public Message<?> afterReceive(@Nullable Message<?> result, Object source) {
+        receives.record(System.nanoTime() - receiveStart, TimeUnit.NANOSECONDS);
+        if (result == null) {
+            lagMillis = 0;
+            pollEnded(received > 0);
+            return null;
+        }
+
+        if (result.getPayload() instanceof File) {
+            lagMillis = Math.max(0, clock.millis() - ((File) result.getPayload()).lastModified());
+        }
+        received++;
+        if (maxMessagesPerPoll > 0 && received >= maxMessagesPerPoll) {
+            // Stopped at the cap, so there are most likely more files waiting.
+            pollEnded(true);
+        }
+        return result;
+    }
+
+    private void pollEnded(boolean foundFiles) {
+        received = 0;
+        if (trigger == null) {
+            return;
+        }
+        if (foundFiles) {
+            trigger.setDuration(minInterval);
+        } else {
+            Duration doubled = trigger.getDuration().multipliedBy(2);
+            trigger.setDuration(doubled.compareTo(maxInterval) > 0 ? maxInterval : doubled);
+        }
+    }
+
+    /**
+     * @return The time until the next poll, or {@code null} if the poll rate is fixed.
+     */
+    @Nullable
+    Duration nextInterval() {
+        return trigger == null ? null : trigger.getDuration();
+    }
+
+    double lagSeconds() {
+        return lagMillis / 1000.0;
+    }
+}
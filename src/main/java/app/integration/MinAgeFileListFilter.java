@@ -0,0 +1,62 @@
+package app.integration;
+
+import org.springframework.integration.file.filters.DiscardAwareFileListFilter;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Only accepts files which haven't been modified for at least the minimum age, so a file still being written isn't
+ * read half written.
+ *
+ * <p>Unlike {@code LastModifiedFileListFilter}, which only works in whole seconds, the age is compared in
+ * milliseconds so watch mode can pick up a new file within a fraction of a second. Files which are too new are passed
+ * to the discard callback, which the watch service uses to queue them again for the next poll.</p>
+ */
+public class MinAgeFileListFilter implements DiscardAwareFileListFilter<File> {
+    private final long minAgeMillis;
+    private final Clock clock;
+    private Consumer<File> discardCallback;
+
+    public MinAgeFileListFilter(Duration minAge) {
+        this(minAge, Clock.systemUTC());
+    }
+
+    MinAgeFileListFilter(Duration minAge, Clock clock) {
+        this.minAgeMillis = minAge.toMillis();
+        this.clock = clock;
+    }
+
+    @Override
+    public void addDiscardCallback(Consumer<File> discardCallback) {
+        this.discardCallback = discardCallback;
+    }
+
+    @Override
+    public List<File> filterFiles(File[] files) {
+        long modifiedBefore = clock.millis() - minAgeMillis;
+        List<File> accepted = new ArrayList<>();
+        for (File file : files) {
+            if (file.lastModified() <= modifiedBefore) {
+                accepted.add(file);
+            } else if (discardCallback != null) {
+                discardCallback.accept(file);
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public boolean accept(File file) {
+        return file.lastModified() <= clock.millis() - minAgeMillis;
+    }
+
+    @Override
+    public boolean supportsSingleFileFiltering() {
+        return true;
+    }
+}
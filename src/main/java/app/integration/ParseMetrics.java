@@ -0,0 +1,54 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the {@code email.pipeline.parse} time of each email, tagged with where it came from and whether it could
+ * be parsed, and the {@code email.pipeline.parsed.size} of each email parsed, which is the size of its body plus its
+ * attachments.
+ */
+class ParseMetrics {
+    private final Timer parsed;
+    private final Timer failed;
+    private final DistributionSummary size;
+
+    ParseMetrics(String source, MeterRegistry meterRegistry) {
+        parsed = parseTimer(source, "success", meterRegistry);
+        failed = parseTimer(source, "failure", meterRegistry);
+        size = DistributionSummary.builder("email.pipeline.parsed.size")
+                .description("Size of the body and attachments of each parsed email")
+                .tag("source", source)
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer parseTimer(String source, String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("email.pipeline.parse")
+                .description("Time to parse an email")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    EmailMessage parse(Callable<EmailMessage> parser) throws Exception {
+        long start = System.nanoTime();
+        EmailMessage email;
+        try {
+            email = parser.call();
+        } catch (Exception e) {
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        parsed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        size.record(email.getSize());
+        return email;
+    }
+}
@@ -0,0 +1,143 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import app.mailextractors.AttachmentStore;
+import app.mailextractors.StreamingEmailExtractor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.subethamail.smtp.MessageContext;
+import org.subethamail.smtp.MessageHandler;
+import org.subethamail.smtp.RejectException;
+import org.subethamail.smtp.server.SMTPServer;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An SMTP server within the app, enabled with {@code email.smtp.enabled}, which publishes each email it receives
+ * straight onto the {@code emailChannel} rather than it being written to a file by a separate server and read back
+ * by the {@code incomingEmailsFlow}. The DATA of each email is parsed as it is received by the
+ * {@link StreamingEmailExtractor}. The input directory is still polled so both can be used at once.
+ *
+ * <p>Each connection is handled on a thread of its own, up to {@code email.smtp.max.connections} connections. When
+ * {@code email.smtp.threads} is set, connections share that many threads instead and any more wait for a free
+ * thread.</p>
+ *
+ * <p>The server is started once the application is ready so no email is published before the flows reading from
+ * the {@code emailChannel} are running.</p>
+ */
+@Component
+@Profile("!test")
+public class SmtpListener implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(SmtpListener.class);
+
+    private final MessageChannel emailChannel;
+    private final AttachmentStore attachmentStore;
+    private final ParseMetrics parseMetrics;
+    private final ExecutorService sessionExecutor;
+    private final SMTPServer server;
+
+    public SmtpListener(@Value("${email.smtp.enabled:false}") boolean enabled,
+                        @Value("${email.smtp.bind.address:0.0.0.0}") String bindAddress,
+                        @Value("${email.smtp.port:2525}") int port,
+                        @Value("${email.smtp.threads:0}") int threads,
+                        @Value("${email.smtp.max.connections:100}") int maxConnections,
+                        @Value("${email.smtp.max.message.bytes:0}") int maxMessageBytes,
+                        @Qualifier("emailChannel") MessageChannel emailChannel,
+                        AttachmentStore attachmentStore,
+                        MeterRegistry meterRegistry) throws UnknownHostException {
+        this.emailChannel = emailChannel;
+        this.attachmentStore = attachmentStore;
+        this.parseMetrics = new ParseMetrics("smtp", meterRegistry);
+        if (!enabled) {
+            this.sessionExecutor = null;
+            this.server = null;
+            return;
+        }
+
+        ThreadFactory threadFactory = new CustomizableThreadFactory("smtp-session-");
+        this.sessionExecutor = threads > 0 ?
+                Executors.newFixedThreadPool(threads, threadFactory) :
+                Executors.newCachedThreadPool(threadFactory);
+        this.server = new SMTPServer(this::createHandler, null, sessionExecutor);
+        server.setBindAddress(InetAddress.getByName(bindAddress));
+        server.setPort(port);
+        server.setSoftwareName("fakesmtp-web");
+        server.setMaxConnections(maxConnections);
+        server.setMaxMessageSize(maxMessageBytes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (server != null) {
+            server.start();
+            logger.info("Listening for SMTP on port " + server.getPort());
+        }
+    }
+
+    private MessageHandler createHandler(MessageContext context) {
+        return new MessageHandler() {
+            @Override
+            public void from(String from) {
+            }
+
+            @Override
+            public void recipient(String recipient) {
+            }
+
+            @Override
+            public void data(InputStream data) throws IOException {
+                long arrivedAt = System.currentTimeMillis();
+                EmailMessage email;
+                try {
+                    email = parseMetrics.parse(() -> StreamingEmailExtractor.parse(data, attachmentStore));
+                } catch (MessagingException e) {
+                    logger.warn("Unable to parse email from " + context.getRemoteAddress() + ": " + e.getMessage());
+                    throw new RejectException(554, "Unable to parse message: " + e.getMessage());
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                email.arrivedAt(arrivedAt);
+                emailChannel.send(MessageBuilder.withPayload(email)
+                        .setHeader(FileHeaders.FILENAME, email.getId().toString())
+                        .build());
+            }
+
+            @Override
+            public void done() {
+            }
+        };
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (server != null) {
+            if (server.isRunning()) {
+                server.stop();
+            }
+            sessionExecutor.shutdown();
+            sessionExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
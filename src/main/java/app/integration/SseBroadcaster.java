@@ -0,0 +1,259 @@
+package app.integration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Fans events out to every server sent event client. Each client has its own bounded queue, so broadcasting only ever
+ * queues events and never waits on a client.
+ *
+ * <p>A client's queue is drained by one sender thread at a time, and there is a sender thread for every client with
+ * events to send. A client stalled on a blocking send only holds up its own thread, never the other clients. The
+ * {@code email.sse.sender.threads} threads are kept alive for reuse, any more are started as needed and stop once idle.
+ * A client stuck for longer than {@code email.sse.idle.timeout.seconds} is dropped.</p>
+ *
+ * <p>Subscribers are removed as soon as their emitter completes, times out or errors. Every
+ * {@code email.sse.heartbeat.seconds} a comment is sent to idle clients so a closed connection is noticed without
+ * waiting for the next email, and clients which haven't accepted anything for {@code email.sse.idle.timeout.seconds}
+ * are disconnected.</p>
+ *
+ * <p>Each broadcast event gets the next id and the last {@code email.sse.replay.capacity} events are kept, so a
+ * client reconnecting with a {@code Last-Event-ID} is sent what it missed. If the events it missed are no longer
+ * kept, for example after a restart, it is sent a {@code reset} event to reload everything instead.</p>
+ *
+ * <p>The {@code email.pipeline.broadcast} timer records how long each broadcast takes to queue the event for every
+ * client, and {@code email.pipeline.latency} with {@code stage=delivered} how long after an email arrived it was sent
+ * to each client.</p>
+ */
+@Component
+@Profile("!test")
+public class SseBroadcaster implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(SseBroadcaster.class);
+
+    // Prevent server sent events from timing out, idle clients are evicted instead.
+    private static final long NO_TIMEOUT = -1;
+
+    static final String RESET_EVENT = "reset";
+
+    private final Map<String, SseSubscriber> subscribers = new ConcurrentHashMap<>();
+
+    // Guarded by itself, also held while subscribing so a subscriber never misses or repeats an event
+    private final ArrayDeque<ReplayEvent> replay;
+    private final int replayCapacity;
+    private long lastEventId;
+
+    private final ThreadPoolTaskExecutor senderExecutor;
+    private final Supplier<SseEmitter> emitterFactory;
+    private final int queueCapacity;
+    private final long idleTimeoutMillis;
+    private final Clock clock;
+    private final Counter evictions;
+    private final Timer broadcasts;
+    private final Timer deliveredLatency;
+    private final ScheduledFuture<?> heartbeats;
+
+    public SseBroadcaster(@Value("${email.sse.sender.threads:4}") int senderThreads,
+                          @Value("${email.sse.subscriber.queue.capacity:100}") int queueCapacity,
+                          @Value("${email.sse.heartbeat.seconds:15}") long heartbeatSeconds,
+                          @Value("${email.sse.idle.timeout.seconds:120}") long idleTimeoutSeconds,
+                          @Value("${email.sse.replay.capacity:100}") int replayCapacity,
+                          TaskScheduler taskScheduler,
+                          MeterRegistry meterRegistry) {
+        this(senderExecutor(senderThreads), () -> new SseEmitter(NO_TIMEOUT), queueCapacity,
+                Duration.ofSeconds(heartbeatSeconds), Duration.ofSeconds(idleTimeoutSeconds), replayCapacity,
+                taskScheduler, meterRegistry, Clock.systemUTC());
+    }
+
+    SseBroadcaster(ThreadPoolTaskExecutor senderExecutor, Supplier<SseEmitter> emitterFactory, int queueCapacity,
+                   Duration heartbeat, Duration idleTimeout, int replayCapacity,
+                   TaskScheduler taskScheduler, MeterRegistry meterRegistry, Clock clock) {
+        // A subscriber's queue is only bounded by a capacity of at least 1.
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "email.sse.subscriber.queue.capacity must be at least 1 but was " + queueCapacity);
+        }
+        this.senderExecutor = senderExecutor;
+        this.emitterFactory = emitterFactory;
+        this.queueCapacity = queueCapacity;
+        this.replayCapacity = replayCapacity;
+        this.replay = new ArrayDeque<>(replayCapacity);
+        // Ids carry on from the start time so ids from before a restart are never mistaken for new ones.
+        this.lastEventId = clock.millis();
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.clock = clock;
+
+        Gauge.builder("email.sse.subscribers", subscribers, Map::size)
+                .description("Connected server sent event clients")
+                .register(meterRegistry);
+        evictions = Counter.builder("email.sse.evictions")
+                .description("Server sent event clients disconnected for being idle")
+                .register(meterRegistry);
+        broadcasts = Timer.builder("email.pipeline.broadcast")
+                .description("Time to queue an event for every server sent event client")
+                .register(meterRegistry);
+        deliveredLatency = Timer.builder("email.pipeline.latency")
+                .description("Time from an email arriving until it reached each stage")
+                .tag("stage", "delivered")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        heartbeats = taskScheduler.scheduleWithFixedDelay(this::heartbeat, heartbeat);
+    }
+
+    static ThreadPoolTaskExecutor senderExecutor(int senderThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(senderThreads);
+        // Handed straight to a thread, a new one if every sender is busy. Each subscriber runs at most one task at
+        // a time so there are never more threads than subscribers.
+        executor.setMaxPoolSize(Integer.MAX_VALUE);
+        executor.setQueueCapacity(0);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("sse-sender-");
+        executor.initialize();
+        return executor;
+    }
+
+    public SseEmitter subscribe(String id) {
+        return subscribe(id, null);
+    }
+
+    /**
+     * Replaces any existing subscriber with the same id, which is the same client after a browser reload.
+     *
+     * @param lastEventId The {@code Last-Event-ID} sent by a reconnecting client, {@code null} for a new client.
+     */
+    public SseEmitter subscribe(String id, Long lastEventId) {
+        SseEmitter emitter = emitterFactory.get();
+        SseSubscriber subscriber = new SseSubscriber(id, emitter, senderExecutor, queueCapacity, clock,
+                arrivedAt -> deliveredLatency.record(clock.millis() - arrivedAt, TimeUnit.MILLISECONDS));
+
+        emitter.onCompletion(() -> remove(id, subscriber));
+        emitter.onTimeout(() -> remove(id, subscriber));
+        emitter.onError(e -> remove(id, subscriber));
+
+        SseSubscriber previous;
+        synchronized (replay) {
+            previous = subscribers.put(id, subscriber);
+            if (lastEventId != null) {
+                replay(subscriber, lastEventId);
+            }
+        }
+        if (previous != null) {
+            previous.close();
+            previous.getEmitter().complete();
+        }
+        return emitter;
+    }
+
+    /**
+     * Sends the event as json data with the next event id.
+     */
+    public void broadcast(Object data) {
+        broadcast(data, 0);
+    }
+
+    /**
+     * @param arrivedAt When the email the event is about arrived in epoch millis, 0 if unknown.
+     */
+    public void broadcast(Object data, long arrivedAt) {
+        long start = System.nanoTime();
+        synchronized (replay) {
+            ReplayEvent event = new ReplayEvent(++lastEventId, data);
+            if (replay.size() == replayCapacity) {
+                replay.pollFirst();
+            }
+            if (replayCapacity > 0) {
+                replay.addLast(event);
+            }
+            subscribers.values().forEach(subscriber -> subscriber.offer(event.toSseEvent(), arrivedAt));
+        }
+        broadcasts.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void replay(SseSubscriber subscriber, long lastEventId) {
+        long oldestKept = replay.isEmpty() ? this.lastEventId + 1 : replay.peekFirst().id;
+        if (lastEventId > this.lastEventId || lastEventId < oldestKept - 1) {
+            subscriber.offer(SseEmitter.event().name(RESET_EVENT).data(""));
+            return;
+        }
+        replay.stream()
+                .filter(event -> event.id > lastEventId)
+                .forEach(event -> subscriber.offer(event.toSseEvent()));
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Evicts subscribers which haven't accepted an event within the idle timeout, then sends a heartbeat to the
+     * subscribers with nothing queued. A failed heartbeat closes the subscriber which then removes itself.
+     */
+    void heartbeat() {
+        long now = clock.millis();
+        subscribers.forEach((id, subscriber) -> {
+            if (subscriber.isClosed()) {
+                remove(id, subscriber);
+            } else if (now - subscriber.getLastSent() > idleTimeoutMillis) {
+                logger.info("Evicting idle SseEmitter " + id);
+                evictions.increment();
+                remove(id, subscriber);
+                subscriber.getEmitter().complete();
+            } else if (!subscriber.hasQueued()) {
+                subscriber.offer(SseEmitter.event().comment("heartbeat"));
+            }
+        });
+    }
+
+    private void remove(String id, SseSubscriber subscriber) {
+        subscriber.close();
+        subscribers.remove(id, subscriber);
+    }
+
+    @Override
+    public void destroy() {
+        heartbeats.cancel(false);
+        subscribers.values().forEach(subscriber -> {
+            subscriber.close();
+            subscriber.getEmitter().complete();
+        });
+        subscribers.clear();
+        senderExecutor.shutdown();
+    }
+
+    private static class ReplayEvent {
+        private final long id;
+        private final Object data;
+
+        ReplayEvent(long id, Object data) {
+            this.id = id;
+            this.data = data;
+        }
+
+        // A builder holds the encoded event so each subscriber needs its own.
+        SseEmitter.SseEventBuilder toSseEvent() {
+            return SseEmitter.event().id(Long.toString(id)).data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+}
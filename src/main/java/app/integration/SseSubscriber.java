@@ -0,0 +1,192 @@
+package app.integration;
+
+import app.jfr.FlightRecording;
+import app.jfr.SseSendEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Queues events for a single server sent event client so publishing never waits on the network. Events are sent
+ * in order on the shared {@code executor} with at most one task per subscriber at a time.
+ *
+ * <p>The queue holds at most {@code capacity} events. When a client falls that far behind, the oldest event is
+ * dropped to make room as the newest emails are the most relevant to the inbox.</p>
+ *
+ * <p>An event offered with the time its email arrived is passed to {@code onDelivered} once it has been sent, to
+ * measure how long emails take to reach the client.</p>
+ */
+class SseSubscriber {
+    private final Logger logger = LoggerFactory.getLogger(SseSubscriber.class);
+
+    private final String id;
+    private final SseEmitter emitter;
+    private final Executor executor;
+    private final int capacity;
+    private final Clock clock;
+    private final LongConsumer onDelivered;
+
+    private final ArrayDeque<Object> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean closed;
+    private volatile long lastSent;
+
+    SseSubscriber(SseEmitter emitter, Executor executor, int capacity) {
+        this("", emitter, executor, capacity, Clock.systemUTC(), arrivedAt -> {
+        });
+    }
+
+    SseSubscriber(String id, SseEmitter emitter, Executor executor, int capacity, Clock clock,
+                  LongConsumer onDelivered) {
+        this.id = id;
+        this.emitter = emitter;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.clock = clock;
+        this.onDelivered = onDelivered;
+        this.queue = new ArrayDeque<>(capacity);
+        this.lastSent = clock.millis();
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * @return The number of events dropped because the client fell behind.
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return Time of the last successful send, or when subscribed if nothing has been sent yet.
+     */
+    long getLastSent() {
+        return lastSent;
+    }
+
+    /**
+     * Queues the event without blocking. A {@code SseEventBuilder} is sent as is, anything else is sent as the data
+     * of an event. Builders can't be shared between subscribers.
+     *
+     * @return {@code false} if this subscriber is closed.
+     */
+    boolean offer(Object event) {
+        return offer(event, 0);
+    }
+
+    /**
+     * @param arrivedAt When the email the event is about arrived in epoch millis, 0 if it isn't about a new email.
+     */
+    boolean offer(Object event, long arrivedAt) {
+        if (closed) {
+            return false;
+        }
+        synchronized (queue) {
+            if (queue.size() == capacity) {
+                queue.pollFirst();
+                dropped.incrementAndGet();
+            }
+            queue.addLast(arrivedAt > 0 ? new Arrived(event, arrivedAt) : event);
+        }
+        schedule();
+        return true;
+    }
+
+    void close() {
+        closed = true;
+        synchronized (queue) {
+            queue.clear();
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            logger.info("SseEmitter sender rejected: " + e.getMessage());
+        }
+    }
+
+    private void drain() {
+        try {
+            Object queued;
+            while (!closed && (queued = poll()) != null) {
+                Object event = queued instanceof Arrived ? ((Arrived) queued).event : queued;
+                SseSendEvent sendEvent = FlightRecording.AVAILABLE ? new SseSendEvent(id) : null;
+                if (sendEvent != null) {
+                    sendEvent.begin();
+                }
+                try {
+                    if (event instanceof SseEmitter.SseEventBuilder) {
+                        emitter.send((SseEmitter.SseEventBuilder) event);
+                    } else {
+                        emitter.send(event);
+                    }
+                    lastSent = clock.millis();
+                    if (queued instanceof Arrived) {
+                        onDelivered.accept(((Arrived) queued).arrivedAt);
+                    }
+                    if (sendEvent != null) {
+                        sendEvent.sent(queued instanceof Arrived, false);
+                    }
+                } catch (Throwable e) {
+                    if (sendEvent != null) {
+                        sendEvent.sent(queued instanceof Arrived, true);
+                    }
+                    logger.info("SseEmitter send error: " + e.getMessage());
+                    close();
+                    emitter.completeWithError(e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+
+        // An event offered after the last poll but before the flag was reset would otherwise wait for the next one.
+        if (!closed && hasQueued()) {
+            schedule();
+        }
+    }
+
+    private Object poll() {
+        synchronized (queue) {
+            return queue.pollFirst();
+        }
+    }
+
+    boolean hasQueued() {
+        synchronized (queue) {
+            return !queue.isEmpty();
+        }
+    }
+
+    private static class Arrived {
+        private final Object event;
+        private final long arrivedAt;
+
+        Arrived(Object event, long arrivedAt) {
+            this.event = event;
+            this.arrivedAt = arrivedAt;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.lang.Nullable;
+
+import java.io.File;
+
+/**
+ * Reading an email file from the input directory into an email, see {@code EmailIntegration}.
+ */
+@Name("app.EmailFile")
+@Label("Email File")
+@Description("An email file read from the input directory")
+@Category({"FakeSMTP Web", "Ingest"})
+@StackTrace(false)
+public class EmailFileEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Label("Email Id")
+    String emailId;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Ends the event, {@code emailId} is {@code null} if the file couldn't be read.
+     */
+    public void read(File file, @Nullable String emailId) {
+        if (shouldCommit()) {
+            this.path = file.getPath();
+            this.fileSize = file.length();
+            this.emailId = emailId;
+            this.failed = emailId == null;
+            commit();
+        }
+    }
+}
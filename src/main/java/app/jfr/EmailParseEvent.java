@@ -0,0 +1,59 @@
+package app.jfr;
+
+import app.domain.EmailMessage;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Parsing an email with {@code EmailExtractor} or {@code StreamingEmailExtractor}.
+ */
+@Name("app.EmailParse")
+@Label("Email Parse")
+@Description("An email parsed into its body and attachments")
+@Category({"FakeSMTP Web", "Ingest"})
+@StackTrace(false)
+public class EmailParseEvent extends Event {
+
+    @Label("Parser")
+    String parser;
+
+    @Label("Email Id")
+    String emailId;
+
+    @Label("Part Count")
+    int partCount;
+
+    @Label("Attachment Count")
+    int attachmentCount;
+
+    @Label("Size")
+    @Description("Size of the body and attachments")
+    @DataAmount
+    long size;
+
+    public EmailParseEvent(String parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Ends the event.
+     *
+     * @param partCount Only counted if the event is recorded.
+     */
+    public void parsed(EmailMessage email, IntSupplier partCount) {
+        if (shouldCommit()) {
+            this.emailId = email.getId().toString();
+            this.partCount = partCount.getAsInt();
+            this.attachmentCount = email.getAttachments() == null ? 0 : email.getAttachments().size();
+            this.size = email.getSize();
+            commit();
+        }
+    }
+}
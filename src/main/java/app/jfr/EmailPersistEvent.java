@@ -0,0 +1,41 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Saving a batch of emails with {@code EmailMessageWriter}.
+ */
+@Name("app.EmailPersist")
+@Label("Email Persist")
+@Description("A batch of emails saved to the database")
+@Category({"FakeSMTP Web", "Persistence"})
+@StackTrace(false)
+public class EmailPersistEvent extends Event {
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Saved")
+    int saved;
+
+    @Label("Saved Individually")
+    @Description("The batch failed so each email was saved on its own")
+    boolean individually;
+
+    /**
+     * Ends the event.
+     */
+    public void persisted(int batchSize, int saved, boolean individually) {
+        if (shouldCommit()) {
+            this.batchSize = batchSize;
+            this.saved = saved;
+            this.individually = individually;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package app.jfr;
+
+/**
+ * Custom Java Flight Recorder events for the hot paths of reading, saving and pushing emails, which show up in any
+ * recording taken of a running instance, for example with {@code jcmd <pid> JFR.start duration=60s filename=app.jfr}.
+ * Each event is only committed while a recording has it enabled, so they cost next to nothing otherwise.
+ *
+ * <p>Flight Recorder is only part of Java 8 from 8u262, so events must only be created when {@link #AVAILABLE}.
+ * The event classes extend {@code jdk.jfr.Event} and can't be loaded without it.</p>
+ */
+public final class FlightRecording {
+
+    public static final boolean AVAILABLE = available();
+
+    private FlightRecording() {
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecording.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Sending one event to a server sent event client, see {@code SseSubscriber}.
+ */
+@Name("app.SseSend")
+@Label("SSE Send")
+@Description("An event sent to a server sent event client")
+@Category({"FakeSMTP Web", "Server Sent Events"})
+@StackTrace(false)
+public class SseSendEvent extends Event {
+
+    @Label("Client Id")
+    String clientId;
+
+    @Label("New Email")
+    @Description("The event is about a new email rather than a heartbeat or replay")
+    boolean newEmail;
+
+    @Label("Failed")
+    boolean failed;
+
+    public SseSendEvent(String clientId) {
+        this.clientId = clientId;
+    }
+
+    /**
+     * Ends the event.
+     */
+    public void sent(boolean newEmail, boolean failed) {
+        if (shouldCommit()) {
+            this.newEmail = newEmail;
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package app.mailextractors;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the decoded content of each attachment while an email is parsed.
+ */
+@FunctionalInterface
+public interface AttachmentStore {
+
+    /**
+     * Only hashes and counts the content, for when the attachments don't need to be kept.
+     */
+    AttachmentStore DISCARD = in -> StoredContent.copy(in, null);
+
+    /**
+     * Reads {@code in} to the end without closing it.
+     */
+    StoredContent store(InputStream in) throws IOException;
+}
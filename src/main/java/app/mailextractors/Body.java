@@ -2,14 +2,13 @@ package app.mailextractors;
 
 import org.springframework.lang.Nullable;
 
-import javax.persistence.Column;
-import javax.persistence.Embeddable;
 import java.util.Objects;
 
-@Embeddable
+/**
+ * A parsed email body, stored as {@code app.domain.BodyMetadata} and {@code app.domain.EmailBody}.
+ */
 public class Body {
 
-    @Column(columnDefinition = "clob")
     private String content;
 
     private ContentType contentType;
@@ -0,0 +1,175 @@
+package app.mailextractors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the content of a single multipart body part from the underlying stream, ending at the next
+ * {@code --boundary} delimiter line. The line break before the delimiter belongs to the delimiter so it is not
+ * part of the content.
+ *
+ * <p>The stream is read in chunks of at most one line so body parts are never held in memory.</p>
+ */
+class BoundaryInputStream extends InputStream {
+    private static final int MAX_CHUNK = 8192;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+
+    private final byte[] line = new byte[MAX_CHUNK];
+
+    // Room for a held line break followed by a full line.
+    private final byte[] chunk = new byte[MAX_CHUNK + 2];
+    private int chunkPos;
+    private int chunkEnd;
+
+    // Line break read at the end of the previous line which is only part of the content if no delimiter follows.
+    private final byte[] heldLineBreak = new byte[2];
+    private int heldLength;
+    private boolean atLineStart = true;
+
+    private boolean delimiterFound;
+    private boolean closeDelimiterFound;
+    private boolean ended;
+
+    BoundaryInputStream(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return {@code true} if the content ended at a delimiter rather than the end of the underlying stream.
+     */
+    boolean isDelimiterFound() {
+        return delimiterFound;
+    }
+
+    /**
+     * @return {@code true} if the content ended at the closing {@code --boundary--} delimiter, meaning there are
+     * no more body parts.
+     */
+    boolean isCloseDelimiterFound() {
+        return closeDelimiterFound;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return chunk[chunkPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, chunkEnd - chunkPos);
+        System.arraycopy(chunk, chunkPos, b, off, n);
+        chunkPos += n;
+        return n;
+    }
+
+    /**
+     * Reads the remaining content without keeping it.
+     */
+    void drain() throws IOException {
+        while (fill()) {
+            chunkPos = chunkEnd;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        while (chunkPos == chunkEnd) {
+            if (ended) {
+                return false;
+            }
+            readChunk();
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to the end of the current line. A line which starts with the delimiter ends the content, otherwise
+     * the held line break and the line are made available without its own line break.
+     */
+    private void readChunk() throws IOException {
+        int length = 0;
+        boolean lineEnded = false;
+
+        int b;
+        while (length < MAX_CHUNK && (b = in.read()) != -1) {
+            line[length++] = (byte) b;
+            if (b == '\n') {
+                lineEnded = true;
+                break;
+            }
+        }
+
+        if (length == 0) {
+            // no delimiter before the end of the stream, so the held line break is content after all
+            ended = true;
+            System.arraycopy(heldLineBreak, 0, chunk, 0, heldLength);
+            chunkPos = 0;
+            chunkEnd = heldLength;
+            heldLength = 0;
+            return;
+        }
+
+        int contentLength = length;
+        if (lineEnded) {
+            contentLength--;
+            if (contentLength > 0 && line[contentLength - 1] == '\r') {
+                contentLength--;
+            }
+        }
+
+        if (atLineStart && isDelimiter(contentLength)) {
+            ended = true;
+            delimiterFound = true;
+            chunkPos = chunkEnd = 0;
+            return;
+        }
+
+        System.arraycopy(heldLineBreak, 0, chunk, 0, heldLength);
+        System.arraycopy(line, 0, chunk, heldLength, contentLength);
+        chunkPos = 0;
+        chunkEnd = heldLength + contentLength;
+
+        heldLength = length - contentLength;
+        System.arraycopy(line, contentLength, heldLineBreak, 0, heldLength);
+        atLineStart = lineEnded;
+    }
+
+    private boolean isDelimiter(int length) {
+        if (length < delimiter.length) {
+            return false;
+        }
+        for (int i = 0; i < delimiter.length; i++) {
+            if (line[i] != delimiter[i]) {
+                return false;
+            }
+        }
+
+        int i = delimiter.length;
+        boolean close = false;
+        if (length >= i + 2 && line[i] == '-' && line[i + 1] == '-') {
+            close = true;
+            i += 2;
+        }
+
+        // only transport padding may follow the delimiter
+        for (; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '\t') {
+                return false;
+            }
+        }
+        closeDelimiterFound = close;
+        return true;
+    }
+}
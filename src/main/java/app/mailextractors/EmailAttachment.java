@@ -4,11 +4,13 @@ import org.springframework.lang.Nullable;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Table;
 import java.util.Comparator;
 import java.util.Objects;
 import java.util.UUID;
 
 @Entity
+@Table(name = "email_attachment")
 public class EmailAttachment {
     @Id
     private UUID id;
@@ -16,17 +18,41 @@ public class EmailAttachment {
     private String fileName;
     private ContentType contentType;
 
+    // Decoded size in bytes
+    private Long size;
+
+    // SHA-256 of the decoded content, names the file in the FileAttachmentStore
+    private String hash;
+
     public EmailAttachment() {
     }
 
     public EmailAttachment(String fileName, ContentType contentType) {
-        this(UUID.randomUUID(), fileName, contentType);
+        this(fileName, contentType, (Long) null);
+    }
+
+    public EmailAttachment(String fileName, ContentType contentType, Long size) {
+        this(UUID.randomUUID(), fileName, contentType, size);
     }
 
     public EmailAttachment(UUID id, String fileName, ContentType contentType) {
+        this(id, fileName, contentType, null);
+    }
+
+    public EmailAttachment(UUID id, String fileName, ContentType contentType, Long size) {
+        this(id, fileName, contentType, size, null);
+    }
+
+    public EmailAttachment(String fileName, ContentType contentType, StoredContent content) {
+        this(UUID.randomUUID(), fileName, contentType, content.getSize(), content.getHash());
+    }
+
+    public EmailAttachment(UUID id, String fileName, ContentType contentType, Long size, String hash) {
         this.id = id;
         this.fileName = fileName;
         this.contentType = contentType;
+        this.size = size;
+        this.hash = hash;
     }
 
     public UUID getId() {
@@ -43,6 +69,16 @@ public class EmailAttachment {
         return contentType;
     }
 
+    @Nullable
+    public Long getSize() {
+        return size;
+    }
+
+    @Nullable
+    public String getHash() {
+        return hash;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -82,6 +118,8 @@ public class EmailAttachment {
                 "id=" + id +
                 ", fileName='" + fileName + '\'' +
                 ", contentType=" + contentType +
+                ", size=" + size +
+                ", hash='" + hash + '\'' +
                 '}';
     }
 }
@@ -1,14 +1,22 @@
 package app.mailextractors;
 
 import app.domain.EmailMessage;
+import app.jfr.EmailParseEvent;
+import app.jfr.FlightRecording;
 import io.vavr.CheckedFunction0;
 import io.vavr.control.Try;
 import org.apache.commons.mail.util.MimeMessageParser;
 import org.springframework.http.MediaType;
 
+import javax.activation.DataSource;
 import javax.mail.Address;
 import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
 import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
@@ -18,13 +26,24 @@ import java.util.stream.Collectors;
 public class EmailExtractor {
 
     public static EmailMessage parse(MimeMessage message) throws Exception {
+        return parse(message, AttachmentStore.DISCARD);
+    }
+
+    public static EmailMessage parse(MimeMessage message, AttachmentStore attachmentStore) throws Exception {
+        EmailParseEvent event = FlightRecording.AVAILABLE ? new EmailParseEvent("mime") : null;
+        if (event != null) {
+            event.begin();
+        }
+
         MimeMessageParser parser = new MimeMessageParser(message).parse();
 
-        Set<EmailAttachment> attachments = parser.getAttachmentList().stream().map(ds ->
-                new EmailAttachment(ds.getName(), new ContentType(ds.getContentType()))
-        ).collect(Collectors.toSet());
+        Set<EmailAttachment> attachments = new HashSet<>();
+        for (DataSource ds : parser.getAttachmentList()) {
+            attachments.add(new EmailAttachment(ds.getName(), new ContentType(ds.getContentType()),
+                    store(ds, attachmentStore)));
+        }
 
-        return EmailMessage.builder()
+        EmailMessage email = EmailMessage.builder()
                 .subject(parser.getSubject())
                 .fromWho(addressExtractor(message::getFrom))
                 .replyTo(addressExtractor(message::getReplyTo))
@@ -40,6 +59,31 @@ public class EmailExtractor {
                         () -> message.getRecipients(Message.RecipientType.BCC)))
                 .attachments(attachments)
                 .create();
+
+        if (event != null) {
+            event.parsed(email, () -> partCount(message));
+        }
+        return email;
+    }
+
+    /**
+     * @return The number of parts which aren't multiparts, 1 for a single part email.
+     */
+    private static int partCount(Part part) {
+        try {
+            Object content = part.getContent();
+            if (!(content instanceof Multipart)) {
+                return 1;
+            }
+            Multipart multipart = (Multipart) content;
+            int count = 0;
+            for (int i = 0; i < multipart.getCount(); i++) {
+                count += partCount(multipart.getBodyPart(i));
+            }
+            return count;
+        } catch (IOException | MessagingException e) {
+            return 0;
+        }
     }
 
     public static Body getBody(MimeMessageParser p) {
@@ -58,6 +102,12 @@ public class EmailExtractor {
         return Try.of(f).map(EmailExtractor::toSet).getOrElseGet(t -> new HashSet<>());
     }
 
+    private static StoredContent store(DataSource ds, AttachmentStore attachmentStore) throws IOException {
+        try (InputStream is = ds.getInputStream()) {
+            return attachmentStore.store(is);
+        }
+    }
+
     public static String stringExtractor(CheckedFunction0<String> f) {
         return Try.of(f).getOrElseGet(t -> null);
     }
@@ -0,0 +1,100 @@
+package app.mailextractors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps attachments in {@code email.attachments.dir} named by the SHA-256 hash of their content, so an attachment
+ * sent in any number of emails is only written to disk once.
+ *
+ * <p>Content is written to a temporary file while it is hashed and then moved into place, an existing file with the
+ * same hash already holds the same bytes. Files are spread over sub directories named by the first 2 characters of
+ * the hash to keep directories small.</p>
+ *
+ * <p>Storing content which is already kept marks its file as recently stored, so it isn't deleted while the email
+ * referencing it is still waiting to be saved.</p>
+ */
+@Component
+public class FileAttachmentStore implements AttachmentStore {
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    // Long enough for a parsed email to be saved, see EmailIntegration.databaseFlow.
+    private static final Duration RECENTLY_STORED = Duration.ofMinutes(1);
+
+    private final Path dir;
+
+    public FileAttachmentStore(
+            @Value("${email.attachments.dir:${java.io.tmpdir}/fakesmtp-web-attachments}") String dir) throws IOException {
+        this.dir = Paths.get(dir);
+        Files.createDirectories(this.dir);
+    }
+
+    @Override
+    public StoredContent store(InputStream in) throws IOException {
+        Path tmp = Files.createTempFile(dir, "attachment-", ".tmp");
+        try {
+            StoredContent content;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                content = StoredContent.copy(in, out);
+            }
+
+            Path target = path(content.getHash());
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            return content;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @return The file holding the content with this hash, empty if it isn't stored.
+     */
+    public Optional<File> find(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            return Optional.empty();
+        }
+        File file = path(hash).toFile();
+        return file.isFile() ? Optional.of(file) : Optional.empty();
+    }
+
+    /**
+     * Deletes the content with this hash unless it was stored within the last minute. Only call once no email
+     * references the hash any more.
+     *
+     * @return {@code false} if there was nothing to delete or it was stored too recently.
+     */
+    public boolean delete(String hash) throws IOException {
+        Optional<File> file = find(hash);
+        if (!file.isPresent()) {
+            return false;
+        }
+        Path path = file.get().toPath();
+        long storedBefore = System.currentTimeMillis() - RECENTLY_STORED.toMillis();
+        if (Files.getLastModifiedTime(path).toMillis() > storedBefore) {
+            return false;
+        }
+        return Files.deleteIfExists(path);
+    }
+
+    private Path path(String hash) {
+        return dir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+}
@@ -0,0 +1,129 @@
+package app.mailextractors;
+
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@code SharedInputStream} over a memory mapped file. {@code MimeMessage} and {@code MimeMultipart} keep a
+ * {@link #newStream(long, long)} view of each body part instead of copying its bytes into their own buffers, so the
+ * content is only ever read straight from the page cache.
+ */
+public class MappedSharedInputStream extends InputStream implements SharedInputStream {
+
+    // Mapping a file costs more than reading it for small files which make up most emails.
+    public static final int MAP_THRESHOLD = 64 * 1024;
+
+    // Positions are relative to the start of this stream, as newStream hands out slices of the parent buffer.
+    private final ByteBuffer buffer;
+
+    private int mark;
+
+    private MappedSharedInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens {@code file} as a {@code SharedInputStream}. Files of at least {@link #MAP_THRESHOLD} bytes are memory
+     * mapped, smaller files are read into a {@code SharedByteArrayInputStream}.
+     */
+    public static InputStream open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Email file " + file + " is too large to map: " + size + " bytes");
+            }
+
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) size);
+                int n = 0;
+                while (bytes.hasRemaining() && n != -1) {
+                    n = channel.read(bytes);
+                }
+                return new SharedByteArrayInputStream(bytes.array(), 0, bytes.position());
+            }
+
+            // The mapping stays valid after the channel is closed and is released once the buffer is collected.
+            return new MappedSharedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        int skipped = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mark = buffer.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.position(mark);
+    }
+
+    @Override
+    public long getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * @param start Position relative to this stream.
+     * @param end   Position relative to this stream or -1 for the end of the stream.
+     */
+    @Override
+    public InputStream newStream(long start, long end) {
+        if (start < 0) {
+            throw new IllegalArgumentException("start < 0");
+        }
+        int limit = end == -1 ? buffer.limit() : (int) Math.min(end, buffer.limit());
+        int from = (int) Math.min(start, limit);
+
+        ByteBuffer view = buffer.duplicate();
+        view.limit(limit);
+        view.position(from);
+        return new MappedSharedInputStream(view.slice());
+    }
+}
@@ -0,0 +1,88 @@
+package app.mailextractors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * The SHA-256 hash as lowercase hex and the size in bytes of some content given to an {@link AttachmentStore}.
+ */
+public class StoredContent {
+    private static final int BUFFER_SIZE = 8192;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String hash;
+    private final long size;
+
+    public StoredContent(String hash, long size) {
+        this.hash = hash;
+        this.size = size;
+    }
+
+    /**
+     * Copies {@code in} to {@code out}, or discards it when {@code out} is null, hashing it on the way through.
+     */
+    public static StoredContent copy(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+            if (out != null) {
+                out.write(buffer, 0, n);
+            }
+            size += n;
+        }
+        return new StoredContent(hex(digest.digest()), size);
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StoredContent that = (StoredContent) o;
+        return size == that.size &&
+                Objects.equals(hash, that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hash, size);
+    }
+
+    @Override
+    public String toString() {
+        return "StoredContent{" +
+                "hash='" + hash + '\'' +
+                ", size=" + size +
+                '}';
+    }
+}
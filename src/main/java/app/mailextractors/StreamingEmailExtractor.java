@@ -0,0 +1,209 @@
+package app.mailextractors;
+
+import app.domain.EmailMessage;
+import app.jfr.EmailParseEvent;
+import app.jfr.FlightRecording;
+import io.vavr.control.Try;
+import org.springframework.http.MediaType;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.ContentDisposition;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MailDateFormat;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeUtility;
+import java.io.*;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Extracts an {@code EmailMessage} in a single pass over the raw RFC822 stream without building a {@code MimeMessage}.
+ *
+ * <p>Only the headers and the text/html body parts are kept in memory. Attachment content is decoded while being
+ * read and streamed to the {@link AttachmentStore}, so parsing a large email costs a fixed amount of memory. Body parts
+ * are selected the same way as {@link EmailExtractor#parse(MimeMessage)} so both produce the same
+ * {@code EmailMessage}.</p>
+ */
+public class StreamingEmailExtractor {
+    private static final int BUFFER_SIZE = 8192;
+
+    public static EmailMessage parse(InputStream in) throws IOException, MessagingException {
+        return parse(in, AttachmentStore.DISCARD);
+    }
+
+    public static EmailMessage parse(InputStream in, AttachmentStore attachmentStore)
+            throws IOException, MessagingException {
+        EmailParseEvent event = FlightRecording.AVAILABLE ? new EmailParseEvent("streaming") : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        InputStream source = in.markSupported() ? in : new BufferedInputStream(in);
+        InternetHeaders headers = new InternetHeaders(source);
+
+        Content content = new Content(attachmentStore);
+        parsePart(headers, source, content);
+
+        Set<String> from = addresses(headers, "From");
+        if (from.isEmpty()) {
+            from = addresses(headers, "Sender");
+        }
+        Set<String> replyTo = addresses(headers, "Reply-To");
+
+        EmailMessage email = EmailMessage.builder()
+                .subject(decodedHeader(headers, "Subject"))
+                .fromWho(from)
+                .replyTo(replyTo.isEmpty() ? from : replyTo)
+                .body(content.getBody())
+                .sentDate(date(headers))
+                .description(decodedHeader(headers, "Content-Description"))
+                .toRecipients(addresses(headers, "To"))
+                .ccRecipients(addresses(headers, "Cc"))
+                .bccRecipients(addresses(headers, "Bcc"))
+                .attachments(content.attachments)
+                .create();
+
+        if (event != null) {
+            event.parsed(email, () -> content.parts);
+        }
+        return email;
+    }
+
+    /**
+     * The first non attachment text/plain and text/html parts make up the body, multiparts are walked into and every
+     * other part is treated as an attachment.
+     */
+    private static void parsePart(InternetHeaders headers, InputStream in, Content content)
+            throws IOException, MessagingException {
+        javax.mail.internet.ContentType contentType = contentType(headers);
+        if (!contentType.match("multipart/*")) {
+            content.parts++;
+        }
+        boolean attachment = Part.ATTACHMENT.equalsIgnoreCase(disposition(headers));
+        String encoding = headers.getHeader("Content-Transfer-Encoding", null);
+
+        if (contentType.match(MediaType.TEXT_PLAIN_VALUE) && content.plain == null && !attachment) {
+            content.plain = text(in, encoding, contentType);
+        } else if (contentType.match(MediaType.TEXT_HTML_VALUE) && content.html == null && !attachment) {
+            content.html = text(in, encoding, contentType);
+        } else if (contentType.match("multipart/*") && contentType.getParameter("boundary") != null) {
+            parseMultipart(in, contentType.getParameter("boundary"), content);
+        } else {
+            content.attachments.add(new EmailAttachment(fileName(headers, contentType),
+                    new ContentType(contentType.getBaseType()), content.attachmentStore.store(decode(in, encoding))));
+        }
+    }
+
+    private static void parseMultipart(InputStream in, String boundary, Content content)
+            throws IOException, MessagingException {
+        BoundaryInputStream preamble = new BoundaryInputStream(in, boundary);
+        preamble.drain();
+        boolean more = preamble.isDelimiterFound() && !preamble.isCloseDelimiterFound();
+
+        while (more) {
+            BoundaryInputStream part = new BoundaryInputStream(in, boundary);
+            parsePart(new InternetHeaders(part), part, content);
+            part.drain();
+            more = part.isDelimiterFound() && !part.isCloseDelimiterFound();
+        }
+    }
+
+    private static String text(InputStream in, String encoding, javax.mail.internet.ContentType contentType)
+            throws IOException, MessagingException {
+        String charset = contentType.getParameter("charset");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(decode(in, encoding), out);
+        return new String(out.toByteArray(), MimeUtility.javaCharset(charset == null ? "us-ascii" : charset));
+    }
+
+    private static InputStream decode(InputStream in, String encoding) throws MessagingException {
+        return encoding == null ? in : MimeUtility.decode(in, encoding.trim());
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static javax.mail.internet.ContentType contentType(InternetHeaders headers) {
+        String value = headers.getHeader("Content-Type", null);
+        if (value == null) {
+            return new javax.mail.internet.ContentType("text", "plain", null);
+        }
+        return Try.of(() -> new javax.mail.internet.ContentType(MimeUtility.unfold(value)))
+                .getOrElseGet(t -> new javax.mail.internet.ContentType("text", "plain", null));
+    }
+
+    private static String disposition(InternetHeaders headers) {
+        String value = headers.getHeader("Content-Disposition", null);
+        if (value == null) {
+            return null;
+        }
+        return Try.of(() -> new ContentDisposition(MimeUtility.unfold(value)).getDisposition()).getOrNull();
+    }
+
+    private static String fileName(InternetHeaders headers, javax.mail.internet.ContentType contentType) {
+        String value = headers.getHeader("Content-Disposition", null);
+        String fileName = value == null ? null :
+                Try.of(() -> new ContentDisposition(MimeUtility.unfold(value)).getParameter("filename")).getOrNull();
+        if (fileName == null) {
+            fileName = contentType.getParameter("name");
+        }
+        if (fileName == null || fileName.isEmpty()) {
+            return null;
+        }
+        String name = fileName;
+        return Try.of(() -> MimeUtility.decodeText(name)).getOrElse(name);
+    }
+
+    private static String decodedHeader(InternetHeaders headers, String name) {
+        String value = headers.getHeader(name, null);
+        if (value == null) {
+            return null;
+        }
+        return Try.of(() -> MimeUtility.decodeText(MimeUtility.unfold(value))).getOrElse(value);
+    }
+
+    private static Set<String> addresses(InternetHeaders headers, String name) {
+        String value = headers.getHeader(name, ",");
+        if (value == null) {
+            return new HashSet<>();
+        }
+        return EmailExtractor.addressExtractor(() -> (Address[]) InternetAddress.parseHeader(value, true));
+    }
+
+    private static Date date(InternetHeaders headers) {
+        String value = headers.getHeader("Date", null);
+        if (value == null) {
+            return null;
+        }
+        return EmailExtractor.dateExtractor(() -> new MailDateFormat().parse(value));
+    }
+
+    private static class Content {
+        private final AttachmentStore attachmentStore;
+        private String plain;
+        private String html;
+        private final Set<EmailAttachment> attachments = new HashSet<>();
+        // Parts which aren't multiparts.
+        private int parts;
+
+        private Content(AttachmentStore attachmentStore) {
+            this.attachmentStore = attachmentStore;
+        }
+
+        private Body getBody() {
+            if (html != null) {
+                return new Body(html, new ContentType(MediaType.TEXT_HTML.toString()));
+            }
+            return new Body(plain, new ContentType(MediaType.TEXT_PLAIN.toString()));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import app.mailextractors.EmailAttachment;
+import app.mailextractors.FileAttachmentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes attachment content from the {@link FileAttachmentStore} once the emails referencing it are deleted, so the
+ * attachments directory doesn't keep growing after the database rows are gone.
+ *
+ * <p>Content stored within the last minute is kept, see {@link FileAttachmentStore#delete}, so an email still
+ * waiting to be saved with the same attachment never loses it.</p>
+ */
+@Component
+@RepositoryEventHandler
+public class AttachmentCleanup {
+    private final Logger logger = LoggerFactory.getLogger(AttachmentCleanup.class);
+
+    private final EmailMessageRepository repository;
+    private final FileAttachmentStore attachmentStore;
+
+    public AttachmentCleanup(EmailMessageRepository repository, FileAttachmentStore attachmentStore) {
+        this.repository = repository;
+        this.attachmentStore = attachmentStore;
+    }
+
+    /**
+     * An email deleted through {@code DELETE /api/emails/{id}}. Its attachments were loaded to cascade the delete,
+     * the content of any no other email also has is deleted.
+     */
+    @HandleAfterDelete
+    public void afterDelete(EmailMessage email) {
+        if (email.getAttachments() == null) {
+            return;
+        }
+        Set<String> hashes = email.getAttachments().stream()
+                .map(EmailAttachment::getHash)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (hashes.isEmpty()) {
+            return;
+        }
+        hashes.removeAll(repository.findAttachmentHashes(hashes));
+        delete(hashes);
+    }
+
+    /**
+     * @param hashes Hashes no remaining email references.
+     */
+    public void delete(Collection<String> hashes) {
+        for (String hash : hashes) {
+            try {
+                attachmentStore.delete(hash);
+            } catch (IOException e) {
+                logger.warn("Unable to delete attachment " + hash + ": " + e.getMessage());
+            }
+        }
+    }
+}
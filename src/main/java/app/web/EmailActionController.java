@@ -1,6 +1,5 @@
 package app.web;
 
-import app.domain.EmailMessage;
 import org.springframework.data.rest.webmvc.BasePathAwareController;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,76 +8,70 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @BasePathAwareController
 @RequestMapping("/emails/actions")
 public class EmailActionController {
     private EmailMessageRepository repository;
-    private Map<ActionType, Consumer<EmailMessage>> handlers;
+    private EmailIndex emailIndex;
+    private AttachmentCleanup attachmentCleanup;
+    private Map<ActionType, Boolean> readStatus;
 
-    public EmailActionController(EmailMessageRepository repository) {
+    public EmailActionController(EmailMessageRepository repository, EmailIndex emailIndex,
+                                 AttachmentCleanup attachmentCleanup) {
         this.repository = repository;
+        this.emailIndex = emailIndex;
+        this.attachmentCleanup = attachmentCleanup;
 
-        handlers = new HashMap<>();
-        handlers.put(ActionType.READ_ALL, EmailMessage::read);
-        handlers.put(ActionType.UNREAD_ALL, EmailMessage::unread);
+        readStatus = new HashMap<>();
+        readStatus.put(ActionType.READ_ALL, true);
+        readStatus.put(ActionType.UNREAD_ALL, false);
     }
 
+    /**
+     * Updates every email in a single statement rather than loading and saving each email.
+     */
     @PostMapping
     public ResponseEntity<?> handleAllEmailsAction(@RequestBody ActionRequest requestBody) {
         if (requestBody.getAction() == null) {
             return ResponseEntity.badRequest().build();
         }
 
-        Iterable<EmailMessage> all = repository.findAll();
-        List<EmailMessage> emails = StreamSupport.stream(all.spliterator(), false).collect(Collectors.toList());
-
-        if (emails.isEmpty()) {
-            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.CREATED);
-        }
-
-        List<EmailMessage> updatedEmails = apply(emails, handlers.get(requestBody.getAction()));
-        repository.saveAll(updatedEmails);
-        return new ResponseEntity<>(emailsToResponseBody(updatedEmails), HttpStatus.CREATED);
+        boolean read = readStatus.get(requestBody.getAction());
+        List<UUID> updatedIds = repository.updateAllRead(read);
+        return new ResponseEntity<>(emailsToResponseBody(updatedIds, read), HttpStatus.CREATED);
     }
 
     /**
      * Spring data rest (SDR) doesn't allow delete on collection resources. It also has to fall under a different URI
      * otherwise it overrides SDR
+     *
+     * <p>The attachment content of the deleted emails is deleted too.</p>
      */
     @DeleteMapping
     public ResponseEntity<Void> handleDeleteAll() {
-        repository.deleteAll();
+        Set<String> hashes = repository.deleteAllEmails();
+        emailIndex.deleteAll();
+        attachmentCleanup.delete(hashes);
         return ResponseEntity.noContent().build();
     }
 
-    private List<Map<String, Object>> emailsToResponseBody(List<EmailMessage> emails) {
-        return emails.stream()
-                .map(this::emailToResponseBody)
+    private List<Map<String, Object>> emailsToResponseBody(List<UUID> ids, boolean read) {
+        return ids.stream()
+                .map(id -> emailToResponseBody(id, read))
                 .collect(Collectors.toList());
     }
 
-    private Map<String, Object> emailToResponseBody(EmailMessage emailMessage) {
+    private Map<String, Object> emailToResponseBody(UUID id, boolean read) {
         Map<String, Object> responseBody = new HashMap<>();
-        responseBody.put("id", emailMessage.getId());
-        responseBody.put("read", emailMessage.isRead());
+        responseBody.put("id", id);
+        responseBody.put("read", read);
         return responseBody;
     }
-
-    /**
-     * Apply a side effecting function to the supplied emails.
-     *
-     * @return The original list with each object mutated.
-     */
-    private List<EmailMessage> apply(List<EmailMessage> emails, Consumer<EmailMessage> f) {
-        emails.forEach(f);
-        return emails;
-    }
 }
@@ -0,0 +1,78 @@
+package app.web;
+
+import app.mailextractors.EmailAttachment;
+import app.mailextractors.FileAttachmentStore;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.rest.webmvc.BasePathAwareController;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Downloads an attachment from the {@link FileAttachmentStore}.
+ *
+ * <p>The file is returned as a {@code Resource} so it is streamed from disk rather than read into memory, and spring
+ * mvc handles {@code Range} requests. The content hash is used as the etag since the content never changes.</p>
+ */
+@BasePathAwareController
+@RequestMapping("/emails/{id}/attachments/{attachmentId}")
+public class EmailAttachmentController {
+    private EmailMessageRepository repository;
+    private FileAttachmentStore attachmentStore;
+
+    public EmailAttachmentController(EmailMessageRepository repository, FileAttachmentStore attachmentStore) {
+        this.repository = repository;
+        this.attachmentStore = attachmentStore;
+    }
+
+    @GetMapping
+    public ResponseEntity<Resource> attachment(@PathVariable("id") UUID id,
+                                               @PathVariable("attachmentId") UUID attachmentId,
+                                               WebRequest request) {
+        Optional<EmailAttachment> attachment = repository.findAttachment(id, attachmentId);
+        Optional<File> file = attachment.flatMap(a -> attachmentStore.find(a.getHash()));
+        if (!file.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String etag = attachment.get().getHash();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(mediaType(attachment.get()));
+        if (attachment.get().getFileName() != null) {
+            headers.setContentDisposition(ContentDisposition.builder("attachment")
+                    .filename(attachment.get().getFileName(), StandardCharsets.UTF_8)
+                    .build());
+        }
+        return ResponseEntity.ok()
+                .headers(headers)
+                .eTag(etag)
+                .body(new FileSystemResource(file.get()));
+    }
+
+    private MediaType mediaType(EmailAttachment attachment) {
+        if (attachment.getContentType() == null || attachment.getContentType().getMediaType() == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(attachment.getContentType().getMediaType());
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+}
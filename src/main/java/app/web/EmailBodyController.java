@@ -0,0 +1,64 @@
+package app.web;
+
+import app.domain.BodyMetadata;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.rest.webmvc.BasePathAwareController;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Serves the body content of an email, which is left out of the email json.
+ *
+ * <p>The etag is stored with the email so a request with a matching {@code If-None-Match} is answered without reading
+ * the content. {@code Range} requests are handled by spring mvc as the content is returned as a {@code Resource}.</p>
+ */
+@BasePathAwareController
+@RequestMapping("/emails/{id}/body")
+public class EmailBodyController {
+    private EmailMessageRepository repository;
+
+    public EmailBodyController(EmailMessageRepository repository) {
+        this.repository = repository;
+    }
+
+    @GetMapping
+    public ResponseEntity<Resource> body(@PathVariable("id") UUID id, WebRequest request) {
+        Optional<BodyMetadata> metadata = repository.findBodyMetadata(id);
+        if (!metadata.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String etag = metadata.get().getEtag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        byte[] content = repository.findBodyContent(id).orElse("").getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(mediaType(metadata.get()))
+                .body(new ByteArrayResource(content));
+    }
+
+    private MediaType mediaType(BodyMetadata metadata) {
+        if (metadata.getContentType() == null || metadata.getContentType().getMediaType() == null) {
+            return new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(metadata.getContentType().getMediaType());
+            return mediaType.getType().equals("text") ? new MediaType(mediaType, StandardCharsets.UTF_8) : mediaType;
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+}
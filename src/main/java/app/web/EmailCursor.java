@@ -0,0 +1,75 @@
+package app.web;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Position of the last email on a page of {@code EmailSummary}s ordered by {@code sentDate desc, id desc}. The next
+ * page starts right after it, so paging costs the same no matter how deep into the inbox it is.
+ *
+ * <p>Encoded as an opaque url safe string so clients don't depend on its contents.</p>
+ */
+public class EmailCursor {
+    private final Date sentDate;
+    private final UUID id;
+
+    public EmailCursor(Date sentDate, UUID id) {
+        this.sentDate = sentDate;
+        this.id = id;
+    }
+
+    public Date getSentDate() {
+        return sentDate;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String encode() {
+        String value = sentDate.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException If the cursor wasn't created by {@link #encode()}.
+     */
+    public static EmailCursor decode(String cursor) {
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = value.indexOf(':');
+        if (separator == -1) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new EmailCursor(new Date(Long.parseLong(value.substring(0, separator))),
+                    UUID.fromString(value.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EmailCursor that = (EmailCursor) o;
+        return Objects.equals(sentDate, that.sentDate) &&
+                Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sentDate, id);
+    }
+
+    @Override
+    public String toString() {
+        return "EmailCursor{" +
+                "sentDate=" + sentDate +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -0,0 +1,80 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.rest.webmvc.BasePathAwareController;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes every email as a json array newest first, in the same format as {@code /api/emails} without the links.
+ *
+ * <p>{@code /api/emails} builds the whole response in memory before sending any of it. Here each email is written as
+ * soon as it's read with {@link EmailMessageRepositoryCustom#forEachEmail}, so exporting a large inbox only holds
+ * {@link EmailMessage#BATCH_SIZE} emails and the json buffer in memory however many emails there are.</p>
+ *
+ * <p>The emails are read in one transaction for the whole download, so an export taking longer than
+ * {@code email.export.timeout.seconds} is cut off rather than letting a stalled client hold a database connection
+ * forever.</p>
+ */
+@BasePathAwareController
+@RequestMapping("/emails")
+public class EmailExportController {
+    private final EmailMessageRepository repository;
+    private final ObjectWriter emailWriter;
+    private final long timeoutMillis;
+
+    public EmailExportController(EmailMessageRepository repository, ObjectMapper objectMapper,
+                                 @Value("${email.export.timeout.seconds:600}") long timeoutSeconds) {
+        this.repository = repository;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        // Left to the json generator's buffer rather than flushing the response after every email.
+        this.emailWriter = objectMapper.writerFor(EmailMessage.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(NativeWebRequest request) {
+        // Spring Data REST doesn't apply spring.mvc.async.request-timeout, without this the servlet container's
+        // default async timeout would cut off a large export part way through.
+        AsyncWebRequest asyncRequest = WebAsyncUtils.createAsyncWebRequest(
+                request.getNativeRequest(HttpServletRequest.class), request.getNativeResponse(HttpServletResponse.class));
+        asyncRequest.setTimeout(timeoutMillis);
+        WebAsyncUtils.getAsyncManager(request).setAsyncWebRequest(asyncRequest);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = emailWriter.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                repository.forEachEmail(EmailMessage.BATCH_SIZE, email -> {
+                    try {
+                        emailWriter.writeValue(generator, email);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+}
@@ -0,0 +1,45 @@
+package app.web;
+
+import org.springframework.lang.Nullable;
+
+import java.util.UUID;
+
+/**
+ * What an {@code EmailMessage} takes up, read without loading the email so {@code EmailRetention} can pick which
+ * emails to evict.
+ */
+public class EmailFootprint {
+    private final UUID id;
+    private final long size;
+
+    @Nullable
+    private final String sourceFile;
+
+    public EmailFootprint(UUID id, long size, @Nullable String sourceFile) {
+        this.id = id;
+        this.size = size;
+        this.sourceFile = sourceFile;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Nullable
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailFootprint{" +
+                "id=" + id +
+                ", size=" + size +
+                ", sourceFile='" + sourceFile + '\'' +
+                '}';
+    }
+}
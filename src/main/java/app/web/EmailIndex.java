@@ -0,0 +1,351 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import app.mailextractors.Body;
+import app.mailextractors.EmailAttachment;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+/**
+ * A Lucene full text index of the subject, addresses, body and attachment file names of every email, searched by
+ * {@code /api/emails/search}. Emails are added as they are saved by {@code EmailMessageWriter} and removed when they
+ * are deleted.
+ *
+ * <p>The index is kept in memory unless {@code email.index.dir} is set, in which case changes are committed to disk
+ * every {@code email.index.commit.seconds}. On startup it is rebuilt from the database if it wasn't closed cleanly, for
+ * example after a crash lost the changes since the last commit, or if it doesn't hold the same number of emails as the
+ * database.</p>
+ *
+ * <p>Results are ordered newest first like the inbox and paged with an {@link EmailCursor}.</p>
+ */
+@Component
+@RepositoryEventHandler
+public class EmailIndex implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(EmailIndex.class);
+
+    static final String ID = "id";
+    static final String SENT_DATE = "sentDate";
+    static final String SUBJECT = "subject";
+    static final String FROM = "from";
+    static final String TO = "to";
+    static final String CC = "cc";
+    static final String BCC = "bcc";
+    static final String BODY = "body";
+    static final String ATTACHMENT = "attachment";
+
+    // Searched when a query term doesn't name a field, bcc has to be asked for.
+    private static final String[] DEFAULT_FIELDS = {SUBJECT, FROM, TO, CC, BODY, ATTACHMENT};
+
+    private static final Sort NEWEST_FIRST = new Sort(
+            new SortField(SENT_DATE, SortField.Type.LONG, true),
+            new SortField(ID, SortField.Type.STRING, true));
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    // Kept in the commit user data of an on disk index, only true in the commit made when it is closed.
+    static final String CLOSED_CLEANLY = "closedCleanly";
+
+    private final EmailMessageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ScheduledFuture<?> commits;
+
+    private final boolean onDisk;
+    private final boolean wasClosedCleanly;
+    // Set when a change couldn't be made, so the index isn't marked as closed cleanly.
+    private volatile boolean failed;
+
+    public EmailIndex(@Value("${email.index.dir:}") String indexDir,
+                      @Value("${email.index.commit.seconds:10}") long commitSeconds,
+                      EmailMessageRepository repository,
+                      PlatformTransactionManager transactionManager,
+                      TaskScheduler taskScheduler) throws IOException {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+
+        this.onDisk = !indexDir.isEmpty();
+        this.directory = indexDir.isEmpty() ? new ByteBuffersDirectory() : FSDirectory.open(Paths.get(indexDir));
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+        // An index kept in memory always starts empty, which the count check in rebuildIfOutOfDate catches.
+        this.wasClosedCleanly = !onDisk || closedCleanly(writer);
+        if (onDisk) {
+            // Until it is closed again, so a crash before then is noticed on the next start.
+            markClosedCleanly(false);
+            writer.commit();
+        }
+        this.commits = indexDir.isEmpty() ? null :
+                taskScheduler.scheduleWithFixedDelay(this::commit, Duration.ofSeconds(commitSeconds));
+    }
+
+    private static boolean closedCleanly(IndexWriter writer) {
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData == null) {
+            return false;
+        }
+        for (Map.Entry<String, String> entry : commitData) {
+            if (CLOSED_CLEANLY.equals(entry.getKey())) {
+                return Boolean.parseBoolean(entry.getValue());
+            }
+        }
+        return false;
+    }
+
+    private void markClosedCleanly(boolean closedCleanly) {
+        writer.setLiveCommitData(Collections.singletonMap(CLOSED_CLEANLY, String.valueOf(closedCleanly)).entrySet());
+    }
+
+    /**
+     * Adds or replaces the emails. A failure is only logged as the emails are already saved, the index is rebuilt
+     * on the next start if it misses any.
+     */
+    public void add(Iterable<EmailMessage> emails) {
+        try {
+            for (EmailMessage email : emails) {
+                writer.updateDocument(new Term(ID, email.getId().toString()), document(email));
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            logger.error("Unable to index emails: " + e.getMessage(), e);
+        }
+    }
+
+    public void delete(Collection<UUID> ids) {
+        try {
+            Term[] terms = ids.stream().map(id -> new Term(ID, id.toString())).toArray(Term[]::new);
+            writer.deleteDocuments(terms);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            failed = true;
+            logger.error("Unable to remove emails from the index: " + e.getMessage(), e);
+        }
+    }
+
+    public void deleteAll() {
+        try {
+            writer.deleteAll();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            failed = true;
+            logger.error("Unable to clear the index: " + e.getMessage(), e);
+        }
+    }
+
+    @HandleAfterDelete
+    public void afterDelete(EmailMessage email) {
+        delete(Collections.singletonList(email.getId()));
+    }
+
+    private Document document(EmailMessage email) {
+        Document document = new Document();
+        String id = email.getId().toString();
+        document.add(new StringField(ID, id, Field.Store.NO));
+        document.add(new SortedDocValuesField(ID, new BytesRef(id)));
+        document.add(new NumericDocValuesField(SENT_DATE, email.getSentDate().getTime()));
+
+        addText(document, SUBJECT, email.getSubject());
+        email.getFromWho().forEach(address -> addText(document, FROM, address));
+        email.getToRecipients().forEach(address -> addText(document, TO, address));
+        email.getCcRecipients().forEach(address -> addText(document, CC, address));
+        email.getBccRecipients().forEach(address -> addText(document, BCC, address));
+        for (EmailAttachment attachment : email.getAttachments()) {
+            String fileName = attachment.getFileName();
+            if (fileName != null) {
+                // The analyzer keeps report.pdf as one word, so the parts of the name are indexed as well.
+                addText(document, ATTACHMENT, fileName + " " + fileName.replaceAll("\\p{Punct}+", " "));
+            }
+        }
+
+        Body body = email.getBody();
+        if (body != null && body.getContent() != null) {
+            addText(document, BODY, isHtml(body) ? body.getContent().replaceAll("<[^>]*>", " ") : body.getContent());
+        }
+        return document;
+    }
+
+    private static void addText(Document document, String field, @Nullable String value) {
+        if (value != null) {
+            document.add(new TextField(field, value, Field.Store.NO));
+        }
+    }
+
+    private static boolean isHtml(Body body) {
+        return body.getContentType() != null && body.getContentType().getMediaType() != null &&
+                body.getContentType().getMediaType().contains("html");
+    }
+
+    /**
+     * Searches with the Lucene classic query syntax, for example {@code to:alice subject:"password reset"}. Terms
+     * without a field are searched for in the subject, addresses, body and attachment names, and all terms must
+     * match unless joined with {@code OR}.
+     *
+     * @param after The position of the last email on the previous page, {@code null} for the first page.
+     * @return The position of each matching email newest first, which is also the cursor to page after it.
+     * @throws IllegalArgumentException If the query can't be parsed or matches too many terms, for example a broad
+     * wildcard.
+     */
+    public List<EmailCursor> search(String query, @Nullable EmailCursor after, int size) {
+        Query parsed;
+        try {
+            QueryParser parser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
+            parser.setDefaultOperator(QueryParser.Operator.AND);
+            parsed = parser.parse(query);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid query: " + query, e);
+        }
+
+        FieldDoc afterDoc = after == null ? null : new FieldDoc(Integer.MAX_VALUE, Float.NaN,
+                new Object[]{after.getSentDate().getTime(), new BytesRef(after.getId().toString())});
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                List<EmailCursor> hits = new ArrayList<>();
+                for (ScoreDoc hit : searcher.searchAfter(afterDoc, parsed, size, NEWEST_FIRST).scoreDocs) {
+                    Object[] fields = ((FieldDoc) hit).fields;
+                    hits.add(new EmailCursor(new Date((Long) fields[0]),
+                            UUID.fromString(((BytesRef) fields[1]).utf8ToString())));
+                }
+                return hits;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (BooleanQuery.TooManyClauses e) {
+            throw new IllegalArgumentException("Query matches too many terms: " + query, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The number of emails in the index.
+     */
+    public int size() {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return searcher.getIndexReader().numDocs();
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rebuilds the index if it wasn't closed cleanly or doesn't hold the same number of emails as the database.
+     */
+    public void rebuildIfOutOfDate() {
+        if (!wasClosedCleanly) {
+            logger.info("Rebuilding email index as it wasn't closed cleanly");
+            rebuild();
+            return;
+        }
+        long saved = repository.count();
+        if (size() != saved) {
+            logger.info("Rebuilding email index of " + size() + " emails from " + saved + " saved emails");
+            rebuild();
+        }
+    }
+
+    /**
+     * Indexes every saved email again, reading them {@code REBUILD_BATCH_SIZE} at a time newest first.
+     */
+    public synchronized void rebuild() {
+        failed = false;
+        deleteAll();
+        PageRequest limit = PageRequest.of(0, REBUILD_BATCH_SIZE);
+        List<EmailSummary> page = repository.findSummaries(limit);
+        while (!page.isEmpty()) {
+            Set<UUID> ids = page.stream().map(EmailSummary::getId).collect(Collectors.toSet());
+            transactionTemplate.executeWithoutResult(status -> add(repository.findAllById(ids)));
+
+            EmailSummary last = page.get(page.size() - 1);
+            page = page.size() < REBUILD_BATCH_SIZE ? new ArrayList<>() :
+                    repository.findSummariesAfter(last.getSentDate(), last.getId(), limit);
+        }
+        commit();
+    }
+
+    private void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to commit the email index: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (commits != null) {
+            commits.cancel(false);
+        }
+        if (onDisk) {
+            // Committed when the writer closes. An index which missed a change is rebuilt on the next start.
+            markClosedCleanly(!failed);
+        }
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+}
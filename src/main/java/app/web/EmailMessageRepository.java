@@ -1,18 +1,111 @@
 package app.web;
 
+import app.domain.BodyMetadata;
 import app.domain.EmailMessage;
+import app.mailextractors.EmailAttachment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.data.rest.core.annotation.RestResource;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @RepositoryRestResource(path = "emails", itemResourceRel = "email", collectionResourceRel = "emails")
-public interface EmailMessageRepository extends CrudRepository<EmailMessage, UUID> {
+public interface EmailMessageRepository extends CrudRepository<EmailMessage, UUID>, EmailMessageRepositoryCustom {
 
     @RestResource(path = "emails", rel = "emails")
     List<EmailMessage> findAll(Sort sort);
-}
 
+    /**
+     * The newest emails, see {@code EmailSummaryController}.
+     */
+    @RestResource(exported = false)
+    @Query("select new app.web.EmailSummary(e.id, e.subject, e.sentDate, e.read, size(e.attachments)) " +
+            "from EmailMessage e order by e.sentDate desc, e.id desc")
+    List<EmailSummary> findSummaries(Pageable pageable);
+
+    /**
+     * The emails following the {@code sentDate} and {@code id} of the last email on the previous page.
+     */
+    @RestResource(exported = false)
+    @Query("select new app.web.EmailSummary(e.id, e.subject, e.sentDate, e.read, size(e.attachments)) " +
+            "from EmailMessage e " +
+            "where e.sentDate < :sentDate or (e.sentDate = :sentDate and e.id < :id) " +
+            "order by e.sentDate desc, e.id desc")
+    List<EmailSummary> findSummariesAfter(@Param("sentDate") Date sentDate, @Param("id") UUID id, Pageable pageable);
+
+    @RestResource(exported = false)
+    @Query("select new app.web.EmailSummary(e.id, e.subject, e.sentDate, e.read, size(e.attachments)) " +
+            "from EmailMessage e where e.id in :ids")
+    List<EmailSummary> findSummariesById(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * The newest emails sent on or after {@code since} with the address in their to, cc or bcc, using the
+     * {@code email_message_recipients} address index, see {@code EmailMessage#recipientAddress}.
+     */
+    @RestResource(exported = false)
+    @Query("select new app.web.EmailSummary(e.id, e.subject, e.sentDate, e.read, size(e.attachments)) " +
+            "from EmailMessage e join e.recipients r " +
+            "where r = :address and e.sentDate >= :since " +
+            "order by e.sentDate desc, e.id desc")
+    List<EmailSummary> findLatestTo(@Param("address") String address, @Param("since") Date since, Pageable pageable);
+
+    /**
+     * @return Pairs of email id and from address.
+     */
+    @RestResource(exported = false)
+    @Query("select e.id, f from EmailMessage e join e.fromWho f where e.id in :ids")
+    List<Object[]> findFromWho(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Empty if there is no email or it has no body, see {@code EmailBodyController}.
+     */
+    @RestResource(exported = false)
+    @Query("select e.bodyMetadata from EmailMessage e where e.id = :id")
+    Optional<BodyMetadata> findBodyMetadata(@Param("id") UUID id);
+
+    @RestResource(exported = false)
+    @Query("select b.content from EmailBody b where b.id = :id")
+    Optional<String> findBodyContent(@Param("id") UUID id);
+
+    /**
+     * Empty if the attachment doesn't belong to the email, see {@code EmailAttachmentController}.
+     */
+    @RestResource(exported = false)
+    @Query("select a from EmailMessage e join e.attachments a where e.id = :id and a.id = :attachmentId")
+    Optional<EmailAttachment> findAttachment(@Param("id") UUID id, @Param("attachmentId") UUID attachmentId);
+
+    /**
+     * The hashes still referenced by an attachment, see {@code AttachmentCleanup}.
+     */
+    @RestResource(exported = false)
+    @Query("select distinct a.hash from EmailAttachment a where a.hash in :hashes")
+    List<String> findAttachmentHashes(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * The oldest emails first, see {@code EmailRetention}.
+     */
+    @RestResource(exported = false)
+    @Query("select new app.web.EmailFootprint(e.id, e.size, e.sourceFile) " +
+            "from EmailMessage e order by e.sentDate, e.id")
+    List<EmailFootprint> findOldest(Pageable pageable);
+
+    @RestResource(exported = false)
+    @Query("select new app.web.EmailFootprint(e.id, e.size, e.sourceFile) " +
+            "from EmailMessage e where e.sentDate < :sentDate order by e.sentDate, e.id")
+    List<EmailFootprint> findOldestSentBefore(@Param("sentDate") Date sentDate, Pageable pageable);
+
+    /**
+     * @return The sum of every email's size in bytes.
+     */
+    @RestResource(exported = false)
+    @Query("select coalesce(sum(e.size), 0) from EmailMessage e")
+    long totalSize();
+}
@@ -0,0 +1,59 @@
+package app.web;
+
+import app.domain.EmailMessage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Set based operations on every email which would otherwise load and save each email one at a time.
+ */
+public interface EmailMessageRepositoryCustom {
+
+    /**
+     * The main tables emails are kept in, see {@link #countRows}.
+     */
+    List<String> TABLES = Arrays.asList(
+            "email_message", "email_body", "email_attachment", "email_message_recipients");
+
+    /**
+     * Sets the read status of every email in a single update.
+     *
+     * @return The ids of the updated emails.
+     */
+    List<UUID> updateAllRead(boolean read);
+
+    /**
+     * Deletes every email including its recipients and attachments with one delete per table.
+     *
+     * @return The hashes of the deleted attachments, their content can be deleted from the
+     * {@code FileAttachmentStore}.
+     */
+    Set<String> deleteAllEmails();
+
+    /**
+     * Deletes the emails including their recipients and attachments with one delete per table.
+     *
+     * @return The hashes of the deleted attachments which no remaining email references, their content can be
+     * deleted from the {@code FileAttachmentStore}.
+     */
+    Set<String> deleteEmails(Collection<UUID> ids);
+
+    /**
+     * @param table One of {@link #TABLES}.
+     * @return The number of rows in the table.
+     */
+    long countRows(String table);
+
+    /**
+     * Passes every email to the action newest first without loading them all at once. The emails are read
+     * {@code fetchSize} at a time from a scrollable result and forgotten once the action has had them, so memory use
+     * doesn't grow with the number of emails. The action is called within the transaction so it can read the email's
+     * collections, but not the body content.
+     */
+    void forEachEmail(int fetchSize, Consumer<EmailMessage> action);
+}
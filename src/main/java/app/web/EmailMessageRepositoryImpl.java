@@ -0,0 +1,150 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class EmailMessageRepositoryImpl implements EmailMessageRepositoryCustom {
+
+    // Children before parents so no foreign key is violated, names are fixed by the EmailMessage mappings.
+    private static final List<String> DELETE_ALL_STATEMENTS = Arrays.asList(
+            "delete from email_message_attachments",
+            "delete from email_attachment",
+            "delete from email_message_from_who",
+            "delete from email_message_reply_to",
+            "delete from email_message_to_recipients",
+            "delete from email_message_cc_recipients",
+            "delete from email_message_bcc_recipients",
+            "delete from email_message_recipients",
+            "delete from email_message",
+            "delete from email_body"
+    );
+
+    // Same order as above, the attachments are deleted separately once their join rows are gone.
+    private static final List<String> DELETE_STATEMENTS = Arrays.asList(
+            "delete from email_message_attachments where email_message_id in (:ids)",
+            "delete from email_message_from_who where email_message_id in (:ids)",
+            "delete from email_message_reply_to where email_message_id in (:ids)",
+            "delete from email_message_to_recipients where email_message_id in (:ids)",
+            "delete from email_message_cc_recipients where email_message_id in (:ids)",
+            "delete from email_message_bcc_recipients where email_message_id in (:ids)",
+            "delete from email_message_recipients where email_message_id in (:ids)",
+            "delete from email_message where id in (:ids)",
+            "delete from email_body where id in (:ids)"
+    );
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public List<UUID> updateAllRead(boolean read) {
+        List<UUID> ids = entityManager.createQuery("select e.id from EmailMessage e", UUID.class).getResultList();
+        entityManager.createQuery("update EmailMessage e set e.read = :read")
+                .setParameter("read", read)
+                .executeUpdate();
+
+        // Bulk statements bypass the persistence context so anything already loaded is stale.
+        entityManager.clear();
+        return ids;
+    }
+
+    @Override
+    @Transactional
+    public Set<String> deleteAllEmails() {
+        Set<String> hashes = new HashSet<>(entityManager.createQuery(
+                "select distinct a.hash from EmailAttachment a where a.hash is not null", String.class)
+                .getResultList());
+        DELETE_ALL_STATEMENTS.forEach(sql -> entityManager.createNativeQuery(sql).executeUpdate());
+        entityManager.clear();
+        return hashes;
+    }
+
+    @Override
+    @Transactional
+    public Set<String> deleteEmails(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        List<UUID> attachmentIds = entityManager.createQuery(
+                "select a.id from EmailMessage e join e.attachments a where e.id in :ids", UUID.class)
+                .setParameter("ids", ids)
+                .getResultList();
+        Set<String> hashes = new HashSet<>(entityManager.createQuery(
+                "select distinct a.hash from EmailMessage e join e.attachments a " +
+                        "where e.id in :ids and a.hash is not null", String.class)
+                .setParameter("ids", ids)
+                .getResultList());
+
+        DELETE_STATEMENTS.forEach(sql -> entityManager.createNativeQuery(sql)
+                .setParameter("ids", ids)
+                .executeUpdate());
+        if (!attachmentIds.isEmpty()) {
+            entityManager.createQuery("delete from EmailAttachment a where a.id in :ids")
+                    .setParameter("ids", attachmentIds)
+                    .executeUpdate();
+        }
+        if (!hashes.isEmpty()) {
+            // The same content may be attached to emails which are kept.
+            hashes.removeAll(entityManager.createQuery(
+                    "select distinct a.hash from EmailAttachment a where a.hash in :hashes", String.class)
+                    .setParameter("hashes", hashes)
+                    .getResultList());
+        }
+        entityManager.clear();
+        return hashes;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countRows(String table) {
+        if (!TABLES.contains(table)) {
+            throw new IllegalArgumentException("Unknown table " + table);
+        }
+        return ((Number) entityManager.createNativeQuery("select count(*) from " + table).getSingleResult())
+                .longValue();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachEmail(int fetchSize, Consumer<EmailMessage> action) {
+        try (Stream<EmailMessage> emails = entityManager.createQuery(
+                "select e from EmailMessage e order by e.sentDate desc, e.id desc", EmailMessage.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            // A whole chunk is read before the action so the first collection read fetches it for the whole chunk.
+            List<EmailMessage> chunk = new ArrayList<>(fetchSize);
+            Iterator<EmailMessage> iterator = emails.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == fetchSize) {
+                    forEach(chunk, action);
+                }
+            }
+            forEach(chunk, action);
+        }
+    }
+
+    /**
+     * Clears the chunk and the persistence context once the action has had each email, before the next email is read.
+     */
+    private void forEach(List<EmailMessage> chunk, Consumer<EmailMessage> action) {
+        chunk.forEach(action);
+        chunk.clear();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,21 @@
+package app.web;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the {@code email.db.rows} in each of the main tables, counted each time the metrics are read.
+ */
+@Component
+public class EmailStoreMetrics {
+
+    public EmailStoreMetrics(EmailMessageRepository repository, MeterRegistry meterRegistry) {
+        for (String table : EmailMessageRepositoryCustom.TABLES) {
+            Gauge.builder("email.db.rows", repository, r -> r.countRows(table))
+                    .description("Rows in each table emails are kept in")
+                    .tag("table", table)
+                    .register(meterRegistry);
+        }
+    }
+}
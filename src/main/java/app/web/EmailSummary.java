@@ -0,0 +1,74 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The fields of an {@code EmailMessage} shown in the inbox list, leaving out the body and the recipients.
+ */
+public class EmailSummary {
+    private final UUID id;
+    private final String subject;
+    private final Date sentDate;
+    private final boolean read;
+    private final int attachmentCount;
+
+    @JsonProperty("from")
+    private final Set<String> fromWho = new HashSet<>();
+
+    public EmailSummary(UUID id, String subject, Date sentDate, boolean read, int attachmentCount) {
+        this.id = id;
+        this.subject = subject;
+        this.sentDate = sentDate;
+        this.read = read;
+        this.attachmentCount = attachmentCount;
+    }
+
+    public static EmailSummary of(EmailMessage email) {
+        EmailSummary summary = new EmailSummary(email.getId(), email.getSubject(), email.getSentDate(), email.isRead(),
+                email.getAttachments() == null ? 0 : email.getAttachments().size());
+        summary.getFromWho().addAll(email.getFromWho());
+        return summary;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Date getSentDate() {
+        return sentDate;
+    }
+
+    public boolean isRead() {
+        return read;
+    }
+
+    public int getAttachmentCount() {
+        return attachmentCount;
+    }
+
+    public Set<String> getFromWho() {
+        return fromWho;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailSummary{" +
+                "id=" + id +
+                ", subject='" + subject + '\'' +
+                ", sentDate=" + sentDate +
+                ", read=" + read +
+                ", attachmentCount=" + attachmentCount +
+                ", fromWho=" + fromWho +
+                '}';
+    }
+}
@@ -0,0 +1,203 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.rest.webmvc.BasePathAwareController;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pages through the inbox newest first without loading the email bodies or recipients. Rather than an offset, each
+ * page is requested with the {@code next} cursor of the previous page so the database seeks straight to it using the
+ * {@code sentDate, id} index.
+ *
+ * <p>Search results are paged the same way, see {@link EmailIndex}.</p>
+ *
+ * <p>The latest emails to an address are looked up with the recipient address index, and can wait for one to arrive
+ * through {@link EmailWaiters} as {@code /await} does.</p>
+ */
+@BasePathAwareController
+@RequestMapping("/emails")
+public class EmailSummaryController {
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_WAIT_SECONDS = 300;
+
+    private EmailMessageRepository repository;
+    private EmailIndex emailIndex;
+    private EmailWaiters emailWaiters;
+
+    public EmailSummaryController(EmailMessageRepository repository, EmailIndex emailIndex,
+                                  EmailWaiters emailWaiters) {
+        this.repository = repository;
+        this.emailIndex = emailIndex;
+        this.emailWaiters = emailWaiters;
+    }
+
+    @GetMapping("/summaries")
+    public ResponseEntity<EmailSummaryPage> summaries(@RequestParam(value = "cursor", required = false) String cursor,
+                                                      @RequestParam(value = "size", defaultValue = "50") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        EmailCursor after;
+        try {
+            after = cursor == null ? null : EmailCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Fetch one extra to know if there is a next page.
+        PageRequest limit = PageRequest.of(0, size + 1);
+        List<EmailSummary> summaries = after == null ?
+                repository.findSummaries(limit) :
+                repository.findSummariesAfter(after.getSentDate(), after.getId(), limit);
+
+        String next = null;
+        if (summaries.size() > size) {
+            summaries = summaries.subList(0, size);
+            EmailSummary last = summaries.get(size - 1);
+            next = new EmailCursor(last.getSentDate(), last.getId()).encode();
+        }
+
+        addFromWho(summaries);
+        return ResponseEntity.ok(new EmailSummaryPage(summaries, next));
+    }
+
+    /**
+     * The emails matching the query newest first, see {@link EmailIndex#search} for the query syntax.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<EmailSummaryPage> search(@RequestParam("q") String query,
+                                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                                   @RequestParam(value = "size", defaultValue = "50") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE || query.trim().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<EmailCursor> hits;
+        try {
+            EmailCursor after = cursor == null ? null : EmailCursor.decode(cursor);
+            // Fetch one extra to know if there is a next page.
+            hits = emailIndex.search(query, after, size + 1);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (hits.isEmpty()) {
+            return ResponseEntity.ok(new EmailSummaryPage(new ArrayList<>(), null));
+        }
+
+        String next = null;
+        if (hits.size() > size) {
+            hits = hits.subList(0, size);
+            next = hits.get(size - 1).encode();
+        }
+
+        // In index order, leaving out any email deleted since it was indexed.
+        Map<UUID, EmailSummary> byId = repository.findSummariesById(
+                hits.stream().map(EmailCursor::getId).collect(Collectors.toList())).stream()
+                .collect(Collectors.toMap(EmailSummary::getId, Function.identity()));
+        List<EmailSummary> summaries = hits.stream()
+                .map(hit -> byId.get(hit.getId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        addFromWho(summaries);
+        return ResponseEntity.ok(new EmailSummaryPage(summaries, next));
+    }
+
+    /**
+     * The newest emails with the address in their to, cc or bcc, sent on or after {@code since} milliseconds since
+     * the epoch if given. With {@code wait} seconds and no such email yet, the response is held until the first one
+     * is saved, or is an empty page if none is saved in time.
+     */
+    @GetMapping("/latest")
+    public DeferredResult<ResponseEntity<EmailSummaryPage>> latest(
+            @RequestParam("to") String to,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "size", defaultValue = "1") int size,
+            @RequestParam(value = "wait", defaultValue = "0") int waitSeconds) {
+        Long timeout = waitSeconds > 0 ? waitSeconds * 1000L : null;
+        DeferredResult<ResponseEntity<EmailSummaryPage>> result = new DeferredResult<>(
+                timeout, ResponseEntity.ok(new EmailSummaryPage(new ArrayList<>(), null)));
+        if (size < 1 || size > MAX_PAGE_SIZE || waitSeconds < 0 || waitSeconds > MAX_WAIT_SECONDS ||
+                to.trim().isEmpty()) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+
+        String address = EmailMessage.recipientAddress(to);
+        Date sentSince = new Date(since == null ? 0 : since);
+
+        // Waiting before querying so an email saved in between is not missed, whichever answers first wins.
+        if (waitSeconds > 0) {
+            result.onCompletion(emailWaiters.await(address, email -> !email.getSentDate().before(sentSince),
+                    email -> result.setResult(ResponseEntity.ok(new EmailSummaryPage(
+                            Collections.singletonList(EmailSummary.of(email)), null)))));
+        }
+
+        List<EmailSummary> summaries = repository.findLatestTo(address, sentSince, PageRequest.of(0, size));
+        if (!summaries.isEmpty() || waitSeconds == 0) {
+            addFromWho(summaries);
+            result.setResult(ResponseEntity.ok(new EmailSummaryPage(summaries, null)));
+        }
+        return result;
+    }
+
+    /**
+     * Waits up to {@code timeout} seconds for the next email to the address whose subject contains {@code subject},
+     * ignoring case, either of which may be left out. Responds with the email's summary as soon as it is saved, or
+     * with 204 No Content if none arrives in time.
+     */
+    @GetMapping("/await")
+    public DeferredResult<ResponseEntity<EmailSummary>> await(
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "subject", required = false) String subject,
+            @RequestParam(value = "timeout", defaultValue = "30") int timeoutSeconds) {
+        DeferredResult<ResponseEntity<EmailSummary>> result = new DeferredResult<>(
+                timeoutSeconds * 1000L, ResponseEntity.noContent().build());
+        if (timeoutSeconds < 1 || timeoutSeconds > MAX_WAIT_SECONDS) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+
+        String address = to == null || to.trim().isEmpty() ? null : EmailMessage.recipientAddress(to);
+        String subjectPart = subject == null ? "" : subject.toLowerCase(Locale.ROOT);
+        result.onCompletion(emailWaiters.await(address,
+                email -> subjectPart.isEmpty() ||
+                        email.getSubject() != null && email.getSubject().toLowerCase(Locale.ROOT).contains(subjectPart),
+                email -> result.setResult(ResponseEntity.ok(EmailSummary.of(email)))));
+        return result;
+    }
+
+    /**
+     * Loads the from addresses for the whole page in a single query.
+     */
+    private void addFromWho(List<EmailSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, EmailSummary> byId = summaries.stream()
+                .collect(Collectors.toMap(EmailSummary::getId, Function.identity()));
+
+        for (Object[] row : repository.findFromWho(byId.keySet())) {
+            byId.get((UUID) row[0]).getFromWho().add((String) row[1]);
+        }
+    }
+}
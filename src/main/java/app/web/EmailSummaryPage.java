@@ -0,0 +1,27 @@
+package app.web;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+public class EmailSummaryPage {
+    private final List<EmailSummary> emails;
+    private final String next;
+
+    public EmailSummaryPage(List<EmailSummary> emails, @Nullable String next) {
+        this.emails = emails;
+        this.next = next;
+    }
+
+    public List<EmailSummary> getEmails() {
+        return emails;
+    }
+
+    /**
+     * The cursor to request the following page with, or null if this is the last page.
+     */
+    @Nullable
+    public String getNext() {
+        return next;
+    }
+}
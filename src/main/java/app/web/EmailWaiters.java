@@ -0,0 +1,109 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Requests waiting for an email to arrive, such as {@code /api/emails/await}. Emails are passed to {@link #saved} by
+ * {@code EmailMessageWriter} once their transaction has committed, so a waiter can load the email it is given
+ * straight away.
+ *
+ * <p>Waiters for an address are kept by that address, so a saved email is only tested against the waiters for its
+ * own recipients and those not waiting on an address rather than every waiter.</p>
+ */
+@Component
+public class EmailWaiters {
+    private final ConcurrentMap<String, Set<Waiter>> byAddress = new ConcurrentHashMap<>();
+    private final Set<Waiter> anyAddress = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Calls {@code onMatch} with the first email saved from now on that is to the address and matches, at most once.
+     *
+     * @param address A bare lower case address, see {@link EmailMessage#recipientAddress}, or {@code null} for any.
+     * @return Cancels the wait, which does nothing once it has matched.
+     */
+    public Runnable await(@Nullable String address, Predicate<EmailMessage> matches,
+                          Consumer<EmailMessage> onMatch) {
+        Waiter waiter = new Waiter(matches, onMatch);
+        if (address == null) {
+            anyAddress.add(waiter);
+            return () -> anyAddress.remove(waiter);
+        }
+
+        byAddress.compute(address, (key, waiters) -> {
+            Set<Waiter> added = waiters == null ? ConcurrentHashMap.newKeySet() : waiters;
+            added.add(waiter);
+            return added;
+        });
+        return () -> remove(address, waiter);
+    }
+
+    private void remove(String address, Waiter waiter) {
+        // Dropping the set once empty, within compute so a waiter being added to it at the same time isn't lost.
+        byAddress.computeIfPresent(address, (key, waiters) -> {
+            waiters.remove(waiter);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
+
+    public void saved(Collection<EmailMessage> emails) {
+        if (byAddress.isEmpty() && anyAddress.isEmpty()) {
+            return;
+        }
+        for (EmailMessage email : emails) {
+            for (String address : email.getRecipients()) {
+                Set<Waiter> waiters = byAddress.get(address);
+                if (waiters != null) {
+                    offer(email, waiters, waiter -> remove(address, waiter));
+                }
+            }
+            offer(email, anyAddress, anyAddress::remove);
+        }
+    }
+
+    private static void offer(EmailMessage email, Set<Waiter> waiters, Consumer<Waiter> remove) {
+        Set<Waiter> matched = new LinkedHashSet<>();
+        for (Waiter waiter : waiters) {
+            if (waiter.offer(email)) {
+                matched.add(waiter);
+            }
+        }
+        matched.forEach(remove);
+    }
+
+    /**
+     * @return The number of requests waiting.
+     */
+    public int size() {
+        return anyAddress.size() + byAddress.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private static class Waiter {
+        private final Predicate<EmailMessage> matches;
+        private final Consumer<EmailMessage> onMatch;
+        private final AtomicBoolean matched = new AtomicBoolean();
+
+        Waiter(Predicate<EmailMessage> matches, Consumer<EmailMessage> onMatch) {
+            this.matches = matches;
+            this.onMatch = onMatch;
+        }
+
+        boolean offer(EmailMessage email) {
+            if (!matched.get() && matches.test(email) && matched.compareAndSet(false, true)) {
+                onMatch.accept(email);
+                return true;
+            }
+            return false;
+        }
+    }
+}
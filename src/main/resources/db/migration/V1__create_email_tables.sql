@@ -0,0 +1,70 @@
+create table email_body (
+    id binary not null,
+    content clob,
+    primary key (id)
+);
+
+create table email_message (
+    id binary not null,
+    subject varchar(255),
+    description varchar(255),
+    sent_date timestamp,
+    received_date timestamp,
+    read boolean not null,
+    body_content_media_type varchar(255),
+    body_size bigint,
+    body_etag varchar(255),
+    body_id binary,
+    primary key (id),
+    constraint fk_email_message_body foreign key (body_id) references email_body
+);
+
+create index idx_email_message_sent_date_id on email_message (sent_date, id);
+
+create table email_attachment (
+    id binary not null,
+    file_name varchar(255),
+    media_type varchar(255),
+    size bigint,
+    hash varchar(255),
+    primary key (id)
+);
+
+create table email_message_attachments (
+    email_message_id binary not null,
+    attachments_id binary not null,
+    primary key (email_message_id, attachments_id),
+    constraint uk_email_message_attachments_attachment unique (attachments_id),
+    constraint fk_email_message_attachments_message foreign key (email_message_id) references email_message,
+    constraint fk_email_message_attachments_attachment foreign key (attachments_id) references email_attachment
+);
+
+create table email_message_from_who (
+    email_message_id binary not null,
+    from_who varchar(255),
+    constraint fk_email_message_from_who_message foreign key (email_message_id) references email_message
+);
+
+create table email_message_reply_to (
+    email_message_id binary not null,
+    reply_to varchar(255),
+    constraint fk_email_message_reply_to_message foreign key (email_message_id) references email_message
+);
+
+create table email_message_to_recipients (
+    email_message_id binary not null,
+    to_recipients varchar(255),
+    constraint fk_email_message_to_recipients_message foreign key (email_message_id) references email_message
+);
+
+create table email_message_cc_recipients (
+    email_message_id binary not null,
+    cc_recipients varchar(255),
+    constraint fk_email_message_cc_recipients_message foreign key (email_message_id) references email_message
+);
+
+create table email_message_bcc_recipients (
+    email_message_id binary not null,
+    bcc_recipients varchar(255),
+    constraint fk_email_message_bcc_recipients_message foreign key (email_message_id) references email_message
+);
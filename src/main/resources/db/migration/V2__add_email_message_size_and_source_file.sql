@@ -0,0 +1,7 @@
+alter table email_message add column size bigint default 0 not null;
+alter table email_message add column source_file varchar(1024);
+
+update email_message e set size = coalesce(e.body_size, 0) + coalesce((
+    select sum(a.size) from email_message_attachments ma
+    join email_attachment a on a.id = ma.attachments_id
+    where ma.email_message_id = e.id), 0);
@@ -0,0 +1,18 @@
+create table email_message_recipients (
+    email_message_id binary not null,
+    address varchar(255),
+    constraint fk_email_message_recipients_message foreign key (email_message_id) references email_message
+);
+
+create index idx_email_message_recipients_address on email_message_recipients (address, email_message_id);
+
+-- The bare address in lower case, the part between < and > when there is a name, see EmailMessage.recipientAddress.
+insert into email_message_recipients (email_message_id, address)
+select distinct email_message_id,
+       lower(trim(case when locate('<', r) > 0 and locate('>', r, locate('<', r)) > 0
+                       then substring(r, locate('<', r) + 1, locate('>', r, locate('<', r)) - locate('<', r) - 1)
+                       else r end))
+from (select email_message_id, to_recipients r from email_message_to_recipients
+      union all select email_message_id, cc_recipients from email_message_cc_recipients
+      union all select email_message_id, bcc_recipients from email_message_bcc_recipients) recipients
+where r is not null;
@@ -20,6 +20,44 @@ getEmails { apiUrl } =
         Http.send Msgs.GetEmailsResult request
 
 
+refreshEmails : AppTypes.Config -> Cmd Msg
+refreshEmails { apiUrl } =
+    let
+        request : Http.Request (List Email)
+        request =
+            Http.get (apiUrl ++ "/api/emails?sort=sentDate,desc") EmailDecoders.decodeEmails
+    in
+        Http.send Msgs.RefreshEmailsResult request
+
+
+getEmail : AppTypes.Config -> EmailId -> Cmd Msg
+getEmail { apiUrl } id =
+    let
+        url : AppTypes.Url
+        url =
+            appendEmailIdToUrl (AppTypes.Url (apiUrl ++ "/api/emails")) id
+
+        request : Http.Request Email
+        request =
+            Http.get url.value EmailDecoders.decodeEmail
+    in
+        Http.send Msgs.GetEmailResult request
+
+
+getEmailBody : AppTypes.Config -> EmailId -> Cmd Msg
+getEmailBody { apiUrl } id =
+    let
+        url : AppTypes.Url
+        url =
+            Utils.appendToUrl (appendEmailIdToUrl (AppTypes.Url (apiUrl ++ "/api/emails")) id) "body"
+
+        request : Http.Request String
+        request =
+            Http.getString url.value
+    in
+        Http.send (Msgs.GetEmailBodyResult id) request
+
+
 requestToggleEmailRead : AppTypes.Config -> Email -> Cmd Msg
 requestToggleEmailRead { apiUrl } email =
     let
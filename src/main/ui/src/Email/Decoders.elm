@@ -28,10 +28,19 @@ decodeEmail =
         |> required "read" Decode.bool
 
 
+{-| Server sent events only contain a summary of the new email, the id is used to fetch the rest.
+-}
+decodeEmailEventId : Decoder EmailId
+decodeEmailEventId =
+    Decode.field "id" Decode.string
+
+
+{-| The content is not included with the email, it is fetched once the email is opened.
+-}
 decodeEmailBody : Decoder EmailBody
 decodeEmailBody =
     Decode.map2 EmailBody
-        (Decode.field "content" <| Decode.maybe Decode.string)
+        (Decode.succeed Nothing)
         (Decode.field "contentType" <| Decode.maybe decodeContentType)
 
 
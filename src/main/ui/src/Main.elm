@@ -111,7 +111,41 @@ the existing value.
 -}
 replaceExistingEmail : Email -> Dict EmailId Email -> Dict EmailId Email
 replaceExistingEmail email mappings =
-    dictUpdateMapper email.id (always email) mappings
+    dictUpdateMapper email.id (keepBodyContent email) mappings
+
+
+{-| The server never sends the body content with an email so any content already fetched is kept.
+-}
+keepBodyContent : Email -> Email -> Email
+keepBodyContent newEmail existingEmail =
+    case ( newEmail.body, existingEmail.body ) of
+        ( Just newBody, Just existingBody ) ->
+            { newEmail | body = Just { newBody | content = existingBody.content } }
+
+        _ ->
+            newEmail
+
+
+setBodyContent : String -> Email -> Email
+setBodyContent content email =
+    { email | body = Maybe.map (\body -> { body | content = Just content }) email.body }
+
+
+{-| Fetches the body content the first time an email is opened.
+-}
+requestEmailBody : AppTypes.Config -> Email -> Cmd Msg
+requestEmailBody config email =
+    case email.body of
+        Just body ->
+            case body.content of
+                Nothing ->
+                    EmailApi.getEmailBody config email.id
+
+                Just _ ->
+                    Cmd.none
+
+        Nothing ->
+            Cmd.none
 
 
 deleteEmail : EmailModel -> EmailId -> EmailModel
@@ -348,7 +382,10 @@ update msg model =
                 | loadIndicator = showMiniLoadIndicator True
                 , selectedEmailId = Just email.id
               }
-            , EmailApi.requestToggleEmailRead model.config email
+            , Cmd.batch
+                [ EmailApi.requestToggleEmailRead model.config email
+                , requestEmailBody model.config email
+                ]
             )
 
         Msgs.EmailAction Msgs.ReadAll ->
@@ -476,15 +513,43 @@ update msg model =
         Msgs.EmailStream Msgs.Error ->
             ( { model | emailStreamStatus = Msgs.Error }, Cmd.none )
 
-        Msgs.ReceiveEmailStreamMessage (Ok email) ->
+        Msgs.ReceiveEmailStreamMessage (Ok emailId) ->
+            if Dict.member emailId model.emailModel.mappings then
+                ( model, Cmd.none )
+            else
+                ( model, EmailApi.getEmail model.config emailId )
+
+        Msgs.GetEmailResult (Ok email) ->
+            ( { model | emailModel = addToEmailModel email model.emailModel }, Cmd.none )
+
+        Msgs.GetEmailResult (Err e) ->
+            handleApiError model e
+
+        Msgs.GetEmailBodyResult id (Ok content) ->
             let
                 emailModel =
                     model.emailModel
-
-                newEmailModel =
-                    addToEmailModel email emailModel
             in
-                ( { model | emailModel = newEmailModel }, Cmd.none )
+                ( { model | emailModel = { emailModel | mappings = dictUpdateMapper id (setBodyContent content) emailModel.mappings } }
+                , Cmd.none
+                )
+
+        Msgs.GetEmailBodyResult _ (Err e) ->
+            handleApiError model e
+
+        Msgs.EmailStreamReset ->
+            ( { model | loadIndicator = showMiniLoadIndicator True }, EmailApi.refreshEmails model.config )
+
+        Msgs.RefreshEmailsResult (Ok allEmails) ->
+            ( { model
+                | emailModel = toEmailModel allEmails
+                , loadIndicator = showMiniLoadIndicator False
+              }
+            , Cmd.none
+            )
+
+        Msgs.RefreshEmailsResult (Err e) ->
+            handleApiError model e
 
         Msgs.ReceiveEmailStreamMessage (Err e) ->
             ( model, showErrorModal <| getErrorModalPayload "Error decoding email received from server sent event stream." )
@@ -560,13 +625,14 @@ subscriptions model =
         , Ports.emailStreamClosed <| always (Msgs.EmailStream Msgs.Closed)
         , Ports.emailStreamError <| always (Msgs.EmailStream Msgs.Error)
         , Ports.emailStreamOnMessage decodeEmailStreamMessage
+        , Ports.emailStreamReset <| always Msgs.EmailStreamReset
         ]
 
 
 decodeEmailStreamMessage : String -> Msg
 decodeEmailStreamMessage jsonString =
     Msgs.ReceiveEmailStreamMessage <|
-        Decode.decodeString EmailDecoders.decodeEmail jsonString
+        Decode.decodeString EmailDecoders.decodeEmailEventId jsonString
 
 
 
@@ -16,7 +16,11 @@ type Msg
     | DeleteAllEmails
     | DeleteAllEmailsResult (Result Http.Error ())
     | EmailStream StreamState
-    | ReceiveEmailStreamMessage (Result String Email)
+    | ReceiveEmailStreamMessage (Result String EmailId)
+    | GetEmailResult (Result Http.Error Email)
+    | GetEmailBodyResult EmailId (Result Http.Error String)
+    | EmailStreamReset
+    | RefreshEmailsResult (Result Http.Error (List Email))
     | ErrorModalClosed
 
 
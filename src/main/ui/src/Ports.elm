@@ -16,7 +16,7 @@ client will ever be connected.
 port subscribeToEmailStream : String -> Cmd msg
 
 
-{-| Json string is sent from js back to elm for decoding into Email
+{-| Json string is sent from js back to elm for decoding the id of the new Email
 -}
 port emailStreamOnMessage : (String -> msg) -> Sub msg
 
@@ -28,3 +28,8 @@ port emailStreamClosed : (() -> msg) -> Sub msg
 
 
 port emailStreamError : (() -> msg) -> Sub msg
+
+
+{-| The server could not send the emails missed while reconnecting so all emails need to be fetched again.
+-}
+port emailStreamReset : (() -> msg) -> Sub msg
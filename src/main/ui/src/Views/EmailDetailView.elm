@@ -285,7 +285,7 @@ getBodyView maybeEmailBody =
                 , H.div [ class "body" ]
                     [ case emailBody.content of
                         Nothing ->
-                            H.p [] [ H.text "No body" ]
+                            H.p [] [ H.text "Loading body..." ]
 
                         Just content ->
                             case emailBody.contentType of
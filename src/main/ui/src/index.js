@@ -44,6 +44,11 @@ app.ports.subscribeToEmailStream.subscribe(function(appIdentifier) {
         app.ports.emailStreamOnMessage.send(e.data);
     };
 
+    // The server could not resume from the last event id so everything is reloaded.
+    source.addEventListener('reset', function() {
+        app.ports.emailStreamReset.send(null);
+    });
+
     source.onerror = function() {
         app.ports.emailStreamError.send(null);
     };
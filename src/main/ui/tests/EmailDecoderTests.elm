@@ -120,22 +120,43 @@ suite =
                         Decode.decodeString EmailDecoders.decodeContentType json
                 in
                     Expect.equal actual (Ok expect)
+        , test "decodeEmailEventId decodes the id of the new email" <|
+            \_ ->
+                let
+                    json =
+                        """
+                        {
+                          "id": "0551ae7b-abe1-4900-ba30-3727151746ba",
+                          "subject": "Activate new account",
+                          "from": [
+                              "no-reply@user-registration.com"
+                          ],
+                          "sentDate": "2017-12-25T17:25:34.000+00:00",
+                          "size": 1024
+                        }
+                        """
+
+                    actual : Result String EmailId
+                    actual =
+                        Decode.decodeString EmailDecoders.decodeEmailEventId json
+                in
+                    Expect.equal actual (Ok "0551ae7b-abe1-4900-ba30-3727151746ba")
         , test "decodeEmailBody decodes all fields correctly" <|
             \_ ->
                 let
                     json =
                         """
                         {
-                          "content": "hello world",
                           "contentType": {
                               "mediaType": "text/plain"
-                          }
+                          },
+                          "size": 11
                         }
                         """
 
                     expect : EmailBody
                     expect =
-                        { content = Just "hello world"
+                        { content = Nothing
                         , contentType =
                             Just
                                 { mediaType = Just "text/plain"
@@ -153,14 +174,14 @@ suite =
                     json =
                         """
                         {
-                          "content": "hello world",
-                          "contentType": null
+                          "contentType": null,
+                          "size": 0
                         }
                         """
 
                     expect : EmailBody
                     expect =
-                        { content = Just "hello world"
+                        { content = Nothing
                         , contentType = Nothing
                         }
 
@@ -181,10 +202,10 @@ suite =
                                 "no-reply@user-registration.com"
                             ],
                             "body": {
-                                "content": "<h1>hello there</h1>",
                                 "contentType": {
                                     "mediaType": "text/html"
-                                }
+                                },
+                                "size": 20
                             },
                             "receivedDate": "2017-12-25T17:25:34",
                             "sentDate": "2017-12-25T17:25:34",
@@ -239,7 +260,7 @@ suite =
                         , replyTo = [ "no-reply@user-registration.com" ]
                         , body =
                             Just
-                                { content = Just "<h1>hello there</h1>"
+                                { content = Nothing
                                 , contentType =
                                     Just
                                         { mediaType = Just "text/html"
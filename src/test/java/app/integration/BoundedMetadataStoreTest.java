@@ -0,0 +1,126 @@
+package app.integration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedMetadataStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    public void putIfAbsent_OnlyStoresFirstValue() {
+        BoundedMetadataStore store = new BoundedMetadataStore(10, Duration.ofDays(1), null, clock);
+
+        assertThat(store.putIfAbsent("a", "1")).isNull();
+        assertThat(store.putIfAbsent("a", "2")).isEqualTo("1");
+        assertThat(store.get("a")).isEqualTo("1");
+    }
+
+    @Test
+    public void replace_OnlyWhenOldValueMatches() {
+        BoundedMetadataStore store = new BoundedMetadataStore(10, Duration.ofDays(1), null, clock);
+        store.put("a", "1");
+
+        assertThat(store.replace("a", "2", "3")).isFalse();
+        assertThat(store.replace("a", "1", "3")).isTrue();
+        assertThat(store.get("a")).isEqualTo("3");
+    }
+
+    @Test
+    public void maxEntries_EvictsLeastRecentlyUsed() {
+        BoundedMetadataStore store = new BoundedMetadataStore(2, Duration.ofDays(1), null, clock);
+        store.put("a", "1");
+        store.put("b", "2");
+
+        // touch 'a' so 'b' becomes the least recently used entry
+        store.get("a");
+        store.put("c", "3");
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get("a")).isEqualTo("1");
+        assertThat(store.get("b")).isNull();
+        assertThat(store.get("c")).isEqualTo("3");
+    }
+
+    @Test
+    public void maxIdle_EvictsEntriesNotAccessedWithinWindow() {
+        BoundedMetadataStore store = new BoundedMetadataStore(10, Duration.ofMinutes(10), null, clock);
+        store.put("a", "1");
+        store.put("b", "2");
+
+        clock.advance(Duration.ofMinutes(6));
+        store.get("b");
+
+        clock.advance(Duration.ofMinutes(6));
+        store.put("c", "3");
+
+        assertThat(store.get("a")).isNull();
+        assertThat(store.get("b")).isEqualTo("2");
+        assertThat(store.get("c")).isEqualTo("3");
+    }
+
+    @Test
+    public void flush_PersistsEntriesForNextStore() throws Exception {
+        File file = new File(folder.getRoot(), "metadata");
+
+        BoundedMetadataStore store = new BoundedMetadataStore(10, Duration.ofDays(1), file, clock);
+        store.put("a", "1");
+        store.put("b", "2");
+        store.flush();
+
+        BoundedMetadataStore reloaded = new BoundedMetadataStore(10, Duration.ofDays(1), file, clock);
+        assertThat(reloaded.size()).isEqualTo(2);
+        assertThat(reloaded.get("a")).isEqualTo("1");
+        assertThat(reloaded.get("b")).isEqualTo("2");
+    }
+
+    @Test
+    public void load_SkipsEntriesIdleWhileStopped() throws Exception {
+        File file = new File(folder.getRoot(), "metadata");
+
+        BoundedMetadataStore store = new BoundedMetadataStore(10, Duration.ofMinutes(10), file, clock);
+        store.put("a", "1");
+        store.close();
+
+        clock.advance(Duration.ofMinutes(11));
+
+        BoundedMetadataStore reloaded = new BoundedMetadataStore(10, Duration.ofMinutes(10), file, clock);
+        assertThat(reloaded.size()).isZero();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2018-01-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
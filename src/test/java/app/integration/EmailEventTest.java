@@ -0,0 +1,44 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import app.mailextractors.Body;
+import app.mailextractors.ContentType;
+import app.mailextractors.EmailAttachment;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmailEventTest {
+
+    @Test
+    public void of_CopiesSummaryFields() {
+        Date sentDate = new Date();
+        EmailMessage email = EmailMessage.builder()
+                .subject("subject")
+                .fromWho(new HashSet<>(Arrays.asList("from@email.com")))
+                .sentDate(sentDate)
+                .create();
+
+        EmailEvent event = EmailEvent.of(email);
+
+        assertThat(event).isEqualTo(new EmailEvent(email.getId(), "subject",
+                new HashSet<>(Arrays.asList("from@email.com")), sentDate, 0));
+    }
+
+    @Test
+    public void of_SizeIncludesBodyAndAttachments() {
+        EmailMessage email = EmailMessage.builder()
+                .body(new Body("0123456789", new ContentType(MediaType.TEXT_PLAIN_VALUE)))
+                .attachments(new HashSet<>(Arrays.asList(
+                        new EmailAttachment("notes.txt", new ContentType(MediaType.TEXT_PLAIN_VALUE), 100L),
+                        new EmailAttachment("unknown.bin", new ContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE)))))
+                .create();
+
+        assertThat(EmailEvent.of(email).getSize()).isEqualTo(110);
+    }
+}
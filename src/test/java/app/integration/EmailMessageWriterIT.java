@@ -0,0 +1,171 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import app.web.EmailIndex;
+import app.web.EmailMessageRepository;
+import app.web.EmailWaiters;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("test")
+public class EmailMessageWriterIT {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EmailMessageRepository repository;
+
+    private final EmailIndex emailIndex = mock(EmailIndex.class);
+    private final EmailWaiters emailWaiters = mock(EmailWaiters.class);
+    private final SseBroadcaster sseBroadcaster = mock(SseBroadcaster.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private EmailMessageWriter writer;
+
+    @Before
+    public void setUp() {
+        writer = new EmailMessageWriter(entityManagerFactory, transactionManager, emailIndex, emailWaiters,
+                sseBroadcaster, meterRegistry);
+    }
+
+    @Test
+    public void write_SavesWholeBatch() {
+        EmailMessage first = email("first", "");
+        EmailMessage second = email("second", "");
+
+        writer.write(Arrays.asList(first, second));
+
+        assertThat(repository.findAll()).containsExactlyInAnyOrder(first, second);
+        assertThat(persisted("saved")).isEqualTo(2);
+        assertThat(persisted("failed")).isEqualTo(0);
+        assertThat(indexed()).containsExactly(first, second);
+        assertThat(passedToWaiters()).containsExactly(first, second);
+        verifyBroadcastOnly(first, second);
+    }
+
+    @Test
+    public void write_InvalidEmailInBatch_SavesTheOthersIndividually() {
+        EmailMessage first = email("first", "");
+        // Longer than the description column so the insert fails.
+        EmailMessage invalid = email("invalid", String.join("", Collections.nCopies(300, "x")));
+        EmailMessage last = email("last", "");
+
+        writer.write(Arrays.asList(first, invalid, last));
+
+        assertThat(repository.findAll()).containsExactlyInAnyOrder(first, last);
+        assertThat(repository.findById(invalid.getId())).isEmpty();
+        assertThat(persisted("saved")).isEqualTo(2);
+        assertThat(persisted("failed")).isEqualTo(1);
+        assertThat(indexed()).containsExactly(first, last);
+        assertThat(passedToWaiters()).containsExactly(first, last);
+        verifyBroadcastOnly(first, last);
+    }
+
+    @Test
+    public void write_DeliveredLatencyIsAtLeastCommitted() {
+        TaskScheduler taskScheduler = mock(TaskScheduler.class);
+        doReturn(mock(ScheduledFuture.class)).when(taskScheduler)
+                .scheduleWithFixedDelay(any(Runnable.class), any(Duration.class));
+        SseBroadcaster broadcaster = new SseBroadcaster(new InlineExecutor(), () -> new SseEmitter(-1L), 10,
+                Duration.ofSeconds(15), Duration.ofSeconds(120), 0, taskScheduler, meterRegistry, Clock.systemUTC());
+        broadcaster.subscribe("a");
+        writer = new EmailMessageWriter(entityManagerFactory, transactionManager, emailIndex, emailWaiters,
+                broadcaster, meterRegistry);
+        EmailMessage email = email("email", "");
+        email.arrivedAt(System.currentTimeMillis() - 1000);
+
+        writer.write(Collections.singletonList(email));
+        broadcaster.destroy();
+
+        Timer committed = latency("committed");
+        Timer delivered = latency("delivered");
+        assertThat(committed.count()).isEqualTo(1);
+        assertThat(delivered.count()).isEqualTo(1);
+        assertThat(committed.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(1000);
+        assertThat(delivered.totalTime(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(committed.totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    private static EmailMessage email(String subject, String description) {
+        return EmailMessage.builder()
+                .subject(subject)
+                .description(description)
+                .sentDate(new Date())
+                .create();
+    }
+
+    private Timer latency(String stage) {
+        return meterRegistry.get("email.pipeline.latency").tag("stage", stage).timer();
+    }
+
+    private double persisted(String outcome) {
+        return meterRegistry.get("email.pipeline.persisted").tag("outcome", outcome).counter().count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Iterable<EmailMessage> indexed() {
+        ArgumentCaptor<Iterable<EmailMessage>> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(emailIndex).add(captor.capture());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<EmailMessage> passedToWaiters() {
+        ArgumentCaptor<Collection<EmailMessage>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(emailWaiters).saved(captor.capture());
+        return captor.getValue();
+    }
+
+    private void verifyBroadcastOnly(EmailMessage... emails) {
+        for (EmailMessage email : emails) {
+            verify(sseBroadcaster).broadcast(EmailEvent.of(email), email.getArrivedAt());
+        }
+        verifyNoMoreInteractions(sseBroadcaster);
+    }
+
+    private static class InlineExecutor extends ThreadPoolTaskExecutor {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package app.integration;
+
+import app.mailextractors.FileAttachmentStore;
+import app.web.EmailFootprint;
+import app.web.EmailIndex;
+import app.web.EmailMessageRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class EmailRetentionTest {
+
+    private static final Instant NOW = Instant.parse("2020-01-02T00:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final EmailMessageRepository repository = mock(EmailMessageRepository.class);
+    private final FileAttachmentStore attachmentStore = mock(FileAttachmentStore.class);
+    private final EmailIndex emailIndex = mock(EmailIndex.class);
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private EmailRetention retention(long maxCount, Duration maxAge, long maxBytes) {
+        when(repository.deleteEmails(anyCollection())).thenReturn(new HashSet<>());
+        return new EmailRetention(repository, attachmentStore, emailIndex, maxCount, maxAge, maxBytes, 2,
+                Duration.ofSeconds(60), taskScheduler, meterRegistry, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private EmailFootprint email(long size) {
+        return new EmailFootprint(UUID.randomUUID(), size, null);
+    }
+
+    private DistributionSummary evicted(String limit) {
+        return meterRegistry.get("email.retention.evicted").tag("limit", limit).summary();
+    }
+
+    @Test
+    public void constructor_NoLimits_NothingScheduled() {
+        retention(0, Duration.ZERO, 0);
+
+        verify(taskScheduler, never()).scheduleWithFixedDelay(any(Runnable.class), any(Duration.class));
+    }
+
+    @Test
+    public void constructor_Limit_SchedulesRuns() {
+        retention(10, Duration.ZERO, 0);
+
+        verify(taskScheduler).scheduleWithFixedDelay(any(Runnable.class), eq(Duration.ofSeconds(60)));
+    }
+
+    @Test
+    public void run_MaxAge_EvictsInBatchesUntilNoneOlder() {
+        EmailFootprint first = email(1);
+        EmailFootprint second = email(1);
+        EmailFootprint third = email(1);
+        Date cutoff = Date.from(NOW.minus(Duration.ofHours(24)));
+        when(repository.findOldestSentBefore(cutoff, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(first, second), Collections.singletonList(third));
+
+        assertThat(retention(0, Duration.ofHours(24), 0).run()).isEqualTo(3);
+
+        verify(repository).deleteEmails(Arrays.asList(first.getId(), second.getId()));
+        verify(repository).deleteEmails(Collections.singletonList(third.getId()));
+        assertThat(evicted("age").totalAmount()).isEqualTo(3);
+        assertThat(evicted("count").totalAmount()).isEqualTo(0);
+    }
+
+    @Test
+    public void run_MaxCount_EvictsOnlyTheExcess() {
+        EmailFootprint first = email(1);
+        EmailFootprint second = email(1);
+        EmailFootprint third = email(1);
+        when(repository.count()).thenReturn(5L);
+        when(repository.findOldest(PageRequest.of(0, 2))).thenReturn(Arrays.asList(first, second));
+        when(repository.findOldest(PageRequest.of(0, 1))).thenReturn(Collections.singletonList(third));
+
+        assertThat(retention(2, Duration.ZERO, 0).run()).isEqualTo(3);
+
+        verify(repository).deleteEmails(Arrays.asList(first.getId(), second.getId()));
+        verify(repository).deleteEmails(Collections.singletonList(third.getId()));
+        assertThat(evicted("count").totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    public void run_MaxBytes_EvictsOldestUntilWithinLimit() {
+        EmailFootprint first = email(30);
+        EmailFootprint second = email(20);
+        when(repository.totalSize()).thenReturn(100L);
+        when(repository.findOldest(PageRequest.of(0, 2))).thenReturn(Arrays.asList(first, second));
+
+        assertThat(retention(0, Duration.ZERO, 80).run()).isEqualTo(1);
+
+        verify(repository).deleteEmails(Collections.singletonList(first.getId()));
+        verify(emailIndex).delete(Collections.singletonList(first.getId()));
+        assertThat(evicted("bytes").totalAmount()).isEqualTo(1);
+    }
+
+    @Test
+    public void run_WithinLimits_EvictsNothing() {
+        when(repository.count()).thenReturn(2L);
+        when(repository.totalSize()).thenReturn(10L);
+
+        assertThat(retention(2, Duration.ZERO, 10).run()).isEqualTo(0);
+
+        verify(repository, never()).deleteEmails(anyCollection());
+        assertThat(evicted("count").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void run_DeletesSourceFilesAndUnusedAttachments() throws Exception {
+        File source = folder.newFile("email.eml");
+        EmailFootprint email = new EmailFootprint(UUID.randomUUID(), 1, source.getPath());
+        when(repository.count()).thenReturn(2L);
+        when(repository.findOldest(PageRequest.of(0, 1))).thenReturn(Collections.singletonList(email));
+        EmailRetention retention = retention(1, Duration.ZERO, 0);
+        when(repository.deleteEmails(anyCollection())).thenReturn(new HashSet<>(Arrays.asList("unused")));
+
+        assertThat(retention.run()).isEqualTo(1);
+
+        assertThat(source).doesNotExist();
+        verify(attachmentStore).delete("unused");
+    }
+}
@@ -0,0 +1,82 @@
+package app.integration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.util.DynamicPeriodicTrigger;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngestPollAdviceTest {
+
+    private static final Instant NOW = Instant.parse("2020-01-02T00:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private IngestPollAdvice advice(DynamicPeriodicTrigger trigger, long maxMessagesPerPoll) {
+        return new IngestPollAdvice(trigger, Duration.ofSeconds(1), Duration.ofSeconds(10), maxMessagesPerPoll,
+                meterRegistry, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private void receive(IngestPollAdvice advice, long ageSeconds) throws Exception {
+        File file = folder.newFile();
+        file.setLastModified(NOW.minusSeconds(ageSeconds).toEpochMilli());
+        advice.afterReceive(MessageBuilder.withPayload(file).build(), null);
+    }
+
+    @Test
+    public void afterReceive_Idle_BacksOffUpToMaxInterval() {
+        IngestPollAdvice advice = advice(new DynamicPeriodicTrigger(Duration.ofSeconds(1)), 10);
+
+        advice.afterReceive(null, null);
+        assertThat(advice.nextInterval()).isEqualTo(Duration.ofSeconds(2));
+        advice.afterReceive(null, null);
+        advice.afterReceive(null, null);
+        advice.afterReceive(null, null);
+        assertThat(advice.nextInterval()).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void afterReceive_FilesFound_PollsAgainAfterMinInterval() throws Exception {
+        IngestPollAdvice advice = advice(new DynamicPeriodicTrigger(Duration.ofSeconds(10)), 10);
+
+        receive(advice, 5);
+        advice.afterReceive(null, null);
+
+        assertThat(advice.nextInterval()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void afterReceive_CapReached_PollsAgainAfterMinInterval() throws Exception {
+        IngestPollAdvice advice = advice(new DynamicPeriodicTrigger(Duration.ofSeconds(10)), 2);
+
+        receive(advice, 5);
+        receive(advice, 3);
+
+        assertThat(advice.nextInterval()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void afterReceive_ReportsAgeOfFileReceivedUntilNoneLeft() throws Exception {
+        IngestPollAdvice advice = advice(null, 10);
+
+        receive(advice, 30);
+        assertThat(meterRegistry.get("email.ingest.lag").gauge().value()).isEqualTo(30);
+
+        advice.afterReceive(null, null);
+        assertThat(advice.lagSeconds()).isEqualTo(0);
+        assertThat(advice.nextInterval()).isNull();
+    }
+}
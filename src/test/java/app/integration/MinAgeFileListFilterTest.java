@@ -0,0 +1,44 @@
+package app.integration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MinAgeFileListFilterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Clock clock = Clock.fixed(Instant.ofEpochMilli(10_000_000), ZoneOffset.UTC);
+
+    private File file(String name, long lastModified) throws Exception {
+        File file = folder.newFile(name);
+        assertThat(file.setLastModified(lastModified)).isTrue();
+        return file;
+    }
+
+    @Test
+    public void filterFiles_TooNew_DiscardedUntilOldEnough() throws Exception {
+        // Whole seconds as some file systems don't keep the milliseconds.
+        File old = file("old.eml", 10_000_000 - 1000);
+        File writing = file("writing.eml", 10_000_000);
+        MinAgeFileListFilter filter = new MinAgeFileListFilter(Duration.ofMillis(500), clock);
+        List<File> discarded = new ArrayList<>();
+        filter.addDiscardCallback(discarded::add);
+
+        assertThat(filter.filterFiles(new File[]{old, writing})).containsExactly(old);
+        assertThat(discarded).containsExactly(writing);
+        assertThat(filter.accept(old)).isTrue();
+        assertThat(filter.accept(writing)).isFalse();
+    }
+}
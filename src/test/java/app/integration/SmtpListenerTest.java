@@ -0,0 +1,117 @@
+package app.integration;
+
+import app.domain.EmailMessage;
+import app.mailextractors.AttachmentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.messaging.Message;
+
+import javax.mail.internet.MimeMessage;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SmtpListenerTest {
+
+    private final QueueChannel emailChannel = new QueueChannel();
+
+    private SmtpListener listener;
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private JavaMailSenderImpl start(int threads) throws Exception {
+        int port = freePort();
+        listener = new SmtpListener(true, "127.0.0.1", port, threads, 10, 0, emailChannel,
+                AttachmentStore.DISCARD, new SimpleMeterRegistry());
+        listener.start();
+
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(port);
+        return sender;
+    }
+
+    private void send(JavaMailSenderImpl sender, String subject) throws Exception {
+        MimeMessage message = sender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setFrom("sender@email.com");
+        helper.setTo("you@email.com");
+        helper.setSubject(subject);
+        helper.setText("<p>some body text</p>", true);
+        helper.addAttachment("notes.txt", new ByteArrayResource("notes".getBytes()));
+        sender.send(message);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (listener != null) {
+            listener.destroy();
+        }
+    }
+
+    @Test
+    public void data_PublishesParsedEmail() throws Exception {
+        send(start(0), "hello");
+
+        Message<?> message = emailChannel.receive(10000);
+        EmailMessage email = (EmailMessage) message.getPayload();
+        assertThat(email.getSubject()).isEqualTo("hello");
+        assertThat(email.getFromWho()).containsExactly("sender@email.com");
+        assertThat(email.getToRecipients()).containsExactly("you@email.com");
+        assertThat(email.getAttachments()).extracting("fileName").containsExactly("notes.txt");
+    }
+
+    @Test
+    public void data_ConcurrentSessions_PublishesEveryEmail() throws Exception {
+        JavaMailSenderImpl sender = start(2);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        List<Future<?>> sent = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String subject = "email " + i;
+            sent.add(clients.submit(() -> {
+                send(sender, subject);
+                return null;
+            }));
+        }
+        for (Future<?> future : sent) {
+            future.get();
+        }
+        clients.shutdown();
+
+        List<String> subjects = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            subjects.add(((EmailMessage) emailChannel.receive(10000).getPayload()).getSubject());
+        }
+        assertThat(subjects).containsExactlyInAnyOrder(
+                "email 0", "email 1", "email 2", "email 3", "email 4", "email 5", "email 6", "email 7");
+    }
+
+    @Test
+    public void constructor_NotEnabled_DoesNotListen() throws Exception {
+        int port = freePort();
+        listener = new SmtpListener(false, "127.0.0.1", port, 0, 10, 0, emailChannel, AttachmentStore.DISCARD,
+                new SimpleMeterRegistry());
+
+        listener.start();
+
+        assertThatThrownBy(() -> new Socket("127.0.0.1", port).close()).isInstanceOf(ConnectException.class);
+        assertThat(emailChannel.getQueueSize()).isZero();
+    }
+}
@@ -0,0 +1,287 @@
+package app.integration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SseBroadcasterTest {
+
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private final ScheduledFuture<?> heartbeats = mock(ScheduledFuture.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final QueuedExecutor executor = new QueuedExecutor();
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+
+    private SseBroadcaster broadcaster;
+    private long startId;
+
+    @Before
+    public void setUp() {
+        doReturn(heartbeats).when(taskScheduler).scheduleWithFixedDelay(any(Runnable.class), any(Duration.class));
+        startId = clock.millis();
+        broadcaster = new SseBroadcaster(executor, this::newEmitter, 10, Duration.ofSeconds(15),
+                Duration.ofSeconds(120), 3, taskScheduler, meterRegistry, clock);
+    }
+
+    private SseEmitter newEmitter() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    private List<String> sent(int emitter) {
+        executor.runAll();
+        return emitters.get(emitter).sent;
+    }
+
+    private String event(long id, String data) {
+        return "id:" + id + "\ndata:" + data + "\n\n";
+    }
+
+    @After
+    public void tearDown() {
+        broadcaster.destroy();
+    }
+
+    private double subscriberGauge() {
+        return meterRegistry.get("email.sse.subscribers").gauge().value();
+    }
+
+    @Test
+    public void constructor_SchedulesHeartbeat() {
+        verify(taskScheduler).scheduleWithFixedDelay(any(Runnable.class), eq(Duration.ofSeconds(15)));
+    }
+
+    @Test
+    public void constructor_QueueCapacityBelowOne_Throws() {
+        assertThatThrownBy(() -> new SseBroadcaster(executor, this::newEmitter, 0, Duration.ofSeconds(15),
+                Duration.ofSeconds(120), 3, taskScheduler, meterRegistry, clock))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void subscribe_SameId_ReplacesSubscriber() {
+        broadcaster.subscribe("a");
+        broadcaster.subscribe("a");
+        broadcaster.subscribe("b");
+
+        assertThat(broadcaster.getSubscriberCount()).isEqualTo(2);
+        assertThat(subscriberGauge()).isEqualTo(2);
+    }
+
+    @Test
+    public void heartbeat_IdleTooLong_EvictsSubscriber() {
+        broadcaster.subscribe("a");
+
+        clock.advance(Duration.ofSeconds(121));
+        broadcaster.heartbeat();
+
+        assertThat(broadcaster.getSubscriberCount()).isZero();
+        assertThat(subscriberGauge()).isZero();
+        assertThat(meterRegistry.get("email.sse.evictions").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void heartbeat_WithinIdleTimeout_KeepsSubscriber() {
+        broadcaster.subscribe("a");
+
+        clock.advance(Duration.ofSeconds(119));
+        broadcaster.heartbeat();
+
+        assertThat(broadcaster.getSubscriberCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("email.sse.evictions").counter().count()).isZero();
+    }
+
+    @Test
+    public void broadcast_SendsEventsWithIncreasingIds() {
+        broadcaster.subscribe("a");
+
+        broadcaster.broadcast("one");
+        broadcaster.broadcast("two");
+
+        assertThat(sent(0)).containsExactly(event(startId + 1, "one"), event(startId + 2, "two"));
+    }
+
+    @Test
+    public void subscribe_LastEventId_ReplaysMissedEvents() {
+        broadcaster.broadcast("one");
+        broadcaster.broadcast("two");
+        broadcaster.broadcast("three");
+
+        broadcaster.subscribe("a", startId + 1);
+
+        assertThat(sent(0)).containsExactly(event(startId + 2, "two"), event(startId + 3, "three"));
+    }
+
+    @Test
+    public void subscribe_LastEventIdIsLatest_ReplaysNothing() {
+        broadcaster.broadcast("one");
+
+        broadcaster.subscribe("a", startId + 1);
+        broadcaster.broadcast("two");
+
+        assertThat(sent(0)).containsExactly(event(startId + 2, "two"));
+    }
+
+    @Test
+    public void subscribe_MissedEventsNoLongerKept_SendsReset() {
+        for (int i = 0; i < 5; i++) {
+            broadcaster.broadcast("email" + i);
+        }
+
+        broadcaster.subscribe("a", startId + 1);
+
+        assertThat(sent(0)).containsExactly("event:reset\ndata:\n\n");
+    }
+
+    @Test
+    public void subscribe_LastEventIdFromBeforeRestart_SendsReset() {
+        broadcaster.subscribe("a", startId - 10);
+
+        assertThat(sent(0)).containsExactly("event:reset\ndata:\n\n");
+    }
+
+    @Test
+    public void destroy_CancelsHeartbeatAndRemovesSubscribers() {
+        broadcaster.subscribe("a");
+
+        broadcaster.destroy();
+
+        verify(heartbeats).cancel(false);
+        assertThat(broadcaster.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    public void broadcast_StalledClient_DoesNotHoldUpOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        Iterator<SseEmitter> emitters = Arrays.<SseEmitter>asList(
+                new StalledEmitter(release), new ForwardingEmitter(received)).iterator();
+        SseBroadcaster broadcaster = new SseBroadcaster(SseBroadcaster.senderExecutor(1), emitters::next, 10,
+                Duration.ofSeconds(15), Duration.ofSeconds(120), 3, taskScheduler, new SimpleMeterRegistry(), clock);
+        try {
+            broadcaster.subscribe("stalled");
+            broadcaster.subscribe("b");
+
+            broadcaster.broadcast("one");
+
+            assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(event(startId + 1, "one"));
+        } finally {
+            release.countDown();
+            broadcaster.destroy();
+        }
+    }
+
+    private static class QueuedExecutor extends ThreadPoolTaskExecutor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> sent = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sent.add(builder.build().stream()
+                    .map(data -> data.getData().toString())
+                    .collect(Collectors.joining()));
+        }
+    }
+
+    private static class StalledEmitter extends SseEmitter {
+        private final CountDownLatch release;
+
+        StalledEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class ForwardingEmitter extends SseEmitter {
+        private final BlockingQueue<String> received;
+
+        ForwardingEmitter(BlockingQueue<String> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            received.add(builder.build().stream()
+                    .map(data -> data.getData().toString())
+                    .collect(Collectors.joining()));
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
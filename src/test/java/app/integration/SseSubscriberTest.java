@@ -0,0 +1,119 @@
+package app.integration;
+
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SseSubscriberTest {
+
+    private final QueuedExecutor executor = new QueuedExecutor();
+
+    @Test
+    public void offer_DoesNotSendOnCallingThread() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseSubscriber subscriber = new SseSubscriber(emitter, executor, 10);
+
+        assertThat(subscriber.offer("a")).isTrue();
+        assertThat(emitter.sent).isEmpty();
+
+        executor.runAll();
+        assertThat(emitter.sent).containsExactly("a");
+    }
+
+    @Test
+    public void offer_SendsInOrderWithSingleTask() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseSubscriber subscriber = new SseSubscriber(emitter, executor, 10);
+
+        subscriber.offer("a");
+        subscriber.offer("b");
+        subscriber.offer("c");
+
+        assertThat(executor.tasks).hasSize(1);
+        executor.runAll();
+        assertThat(emitter.sent).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    public void offer_WithArrivalTime_ReportsDeliveryOnceSent() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        List<Long> delivered = new ArrayList<>();
+        SseSubscriber subscriber = new SseSubscriber("1", emitter, executor, 10, Clock.systemUTC(), delivered::add);
+
+        subscriber.offer("a", 1000);
+        subscriber.offer("heartbeat");
+        assertThat(delivered).isEmpty();
+
+        executor.runAll();
+        assertThat(emitter.sent).containsExactly("a", "heartbeat");
+        assertThat(delivered).containsExactly(1000L);
+    }
+
+    @Test
+    public void offer_QueueFull_DropsOldest() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseSubscriber subscriber = new SseSubscriber(emitter, executor, 2);
+
+        subscriber.offer("a");
+        subscriber.offer("b");
+        subscriber.offer("c");
+        subscriber.offer("d");
+
+        executor.runAll();
+        assertThat(emitter.sent).containsExactly("c", "d");
+        assertThat(subscriber.getDropped()).isEqualTo(2);
+    }
+
+    @Test
+    public void sendError_ClosesSubscriber() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.fail = true;
+        SseSubscriber subscriber = new SseSubscriber(emitter, executor, 10);
+
+        subscriber.offer("a");
+        subscriber.offer("b");
+        executor.runAll();
+
+        assertThat(subscriber.isClosed()).isTrue();
+        assertThat(subscriber.offer("c")).isFalse();
+        assertThat(executor.tasks).isEmpty();
+    }
+
+    private static class QueuedExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<Object> sent = new ArrayList<>();
+        private boolean fail;
+
+        @Override
+        public void send(Object object) throws IOException {
+            if (fail) {
+                throw new IOException("Broken pipe");
+            }
+            sent.add(object);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package app.mailextractors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileAttachmentStoreTest {
+
+    // sha-256 of "attachment content"
+    private static final String HASH = "275448a1a959fc53524b38f1366f57a3ed7afaa59c9e099c72454e5fd7f8a6fa";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileAttachmentStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileAttachmentStore(folder.getRoot().getAbsolutePath());
+    }
+
+    private StoredContent store(String content) throws Exception {
+        return store.store(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private long countFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    public void store_ReturnsHashAndSize() throws Exception {
+        StoredContent content = store("attachment content");
+
+        assertThat(content).isEqualTo(new StoredContent(HASH, 18));
+    }
+
+    @Test
+    public void store_SameContent_StoredOnce() throws Exception {
+        StoredContent first = store("attachment content");
+        StoredContent second = store("attachment content");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(countFiles()).isEqualTo(1);
+    }
+
+    @Test
+    public void find_StoredContent_ReturnsFile() throws Exception {
+        store("attachment content");
+        store("other content");
+
+        File file = store.find(HASH).get();
+
+        assertThat(file).hasContent("attachment content");
+        assertThat(countFiles()).isEqualTo(2);
+    }
+
+    @Test
+    public void find_UnknownOrInvalidHash_IsEmpty() throws Exception {
+        assertThat(store.find(HASH)).isEmpty();
+        assertThat(store.find("../" + HASH.substring(3))).isEmpty();
+        assertThat(store.find(null)).isEmpty();
+    }
+
+    @Test
+    public void delete_StoredLongAgo_DeletesFile() throws Exception {
+        store("attachment content");
+        File file = store.find(HASH).get();
+        Files.setLastModifiedTime(file.toPath(), FileTime.from(1, TimeUnit.HOURS));
+
+        assertThat(store.delete(HASH)).isTrue();
+        assertThat(store.find(HASH)).isEmpty();
+        assertThat(countFiles()).isEqualTo(0);
+    }
+
+    @Test
+    public void delete_StoredAgainRecently_KeepsFile() throws Exception {
+        store("attachment content");
+        Files.setLastModifiedTime(store.find(HASH).get().toPath(), FileTime.from(1, TimeUnit.HOURS));
+        store("attachment content");
+
+        assertThat(store.delete(HASH)).isFalse();
+        assertThat(store.find(HASH)).isPresent();
+    }
+
+    @Test
+    public void delete_UnknownHash_ReturnsFalse() throws Exception {
+        assertThat(store.delete(HASH)).isFalse();
+    }
+
+    @Test
+    public void discard_OnlyHashes() throws Exception {
+        StoredContent content = AttachmentStore.DISCARD.store(
+                new ByteArrayInputStream("attachment content".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(content).isEqualTo(new StoredContent(HASH, 18));
+    }
+}
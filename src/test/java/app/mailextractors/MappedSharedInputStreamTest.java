@@ -0,0 +1,99 @@
+package app.mailextractors;
+
+import app.domain.EmailMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedSharedInputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Session session = Session.getDefaultInstance(new Properties());
+
+    private File createFile(int size) throws Exception {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    @Test
+    public void open_SmallFile_ReadsIntoByteArray() throws Exception {
+        File file = createFile(100);
+
+        try (InputStream in = MappedSharedInputStream.open(file)) {
+            assertThat(in).isInstanceOf(SharedByteArrayInputStream.class);
+            assertThat(StreamUtils.copyToByteArray(in)).isEqualTo(Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    @Test
+    public void open_LargeFile_MapsFile() throws Exception {
+        File file = createFile(MappedSharedInputStream.MAP_THRESHOLD * 2);
+
+        try (InputStream in = MappedSharedInputStream.open(file)) {
+            assertThat(in).isInstanceOf(MappedSharedInputStream.class);
+            assertThat(StreamUtils.copyToByteArray(in)).isEqualTo(Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    @Test
+    public void newStream_IsRelativeToParentStream() throws Exception {
+        File file = createFile(MappedSharedInputStream.MAP_THRESHOLD * 2);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        try (InputStream in = MappedSharedInputStream.open(file)) {
+            SharedInputStream shared = (SharedInputStream) in;
+            in.skip(10);
+            assertThat(shared.getPosition()).isEqualTo(10);
+
+            InputStream part = shared.newStream(100, 200);
+            assertThat(StreamUtils.copyToByteArray(part)).isEqualTo(Arrays.copyOfRange(bytes, 100, 200));
+
+            InputStream nested = ((SharedInputStream) shared.newStream(100, -1)).newStream(10, 20);
+            assertThat(StreamUtils.copyToByteArray(nested)).isEqualTo(Arrays.copyOfRange(bytes, 110, 120));
+
+            // reading a new stream doesn't move the parent
+            assertThat(shared.getPosition()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void parse_MappedEmail_SameAsFileInputStream() throws Exception {
+        File withAttachments = new File("./test-data/eml/with-attachments");
+
+        EmailMessage expected;
+        try (InputStream input = new FileInputStream(withAttachments)) {
+            expected = EmailExtractor.parse(new MimeMessage(session, input));
+        }
+
+        EmailMessage result;
+        try (InputStream input = MappedSharedInputStream.open(withAttachments)) {
+            result = EmailExtractor.parse(new MimeMessage(session, input));
+        }
+
+        assertThat(result.getBody()).isEqualTo(expected.getBody());
+        assertThat(result.getAttachments())
+                .usingElementComparator(EmailAttachment.excludeIdComparator())
+                .containsExactlyInAnyOrderElementsOf(expected.getAttachments());
+    }
+}
@@ -0,0 +1,150 @@
+package app.mailextractors;
+
+import app.domain.EmailMessage;
+import org.junit.Test;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class StreamingEmailExtractorTest {
+
+    private final Session session = Session.getDefaultInstance(new Properties());
+
+    private final String TEST_EMAILS_PATH = "./test-data/eml/";
+
+    private EmailMessage parseStreaming(String fileName) throws Exception {
+        try (InputStream input = new FileInputStream(new File(TEST_EMAILS_PATH + fileName))) {
+            return StreamingEmailExtractor.parse(input);
+        }
+    }
+
+    private EmailMessage parseMimeMessage(String fileName) throws Exception {
+        try (InputStream input = new FileInputStream(new File(TEST_EMAILS_PATH + fileName))) {
+            return EmailExtractor.parse(new MimeMessage(session, input));
+        }
+    }
+
+    private void assertSameAsMimeMessageParser(String fileName) throws Exception {
+        EmailMessage expected = parseMimeMessage(fileName);
+        EmailMessage result = parseStreaming(fileName);
+
+        assertThat(result.getSubject()).isEqualTo(expected.getSubject());
+        assertThat(result.getFromWho()).isEqualTo(expected.getFromWho());
+        assertThat(result.getReplyTo()).isEqualTo(expected.getReplyTo());
+        assertThat(result.getBody()).isEqualTo(expected.getBody());
+        assertThat(result.getSentDate()).isEqualTo(expected.getSentDate());
+        assertThat(result.getDescription()).isEqualTo(expected.getDescription());
+        assertThat(result.getToRecipients()).isEqualTo(expected.getToRecipients());
+        assertThat(result.getCcRecipients()).isEqualTo(expected.getCcRecipients());
+        assertThat(result.getBccRecipients()).isEqualTo(expected.getBccRecipients());
+        assertThat(result.getAttachments())
+                .usingElementComparator(EmailAttachment.excludeIdComparator())
+                .containsExactlyInAnyOrderElementsOf(expected.getAttachments());
+        assertThat(result.getAttachments())
+                .extracting(EmailAttachment::getSize)
+                .containsExactlyInAnyOrderElementsOf(expected.getAttachments().stream()
+                        .map(EmailAttachment::getSize).collect(Collectors.toList()));
+        assertThat(result.getAttachments())
+                .extracting(EmailAttachment::getHash)
+                .containsExactlyInAnyOrderElementsOf(expected.getAttachments().stream()
+                        .map(EmailAttachment::getHash).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void parse_WithAttachments_SameAsMimeMessageParser() throws Exception {
+        assertSameAsMimeMessageParser("with-attachments");
+    }
+
+    @Test
+    public void parse_WithNoAttachments_SameAsMimeMessageParser() throws Exception {
+        assertSameAsMimeMessageParser("with-no-attachments");
+    }
+
+    @Test
+    public void parse_PlainTextWithNoAttachments_SameAsMimeMessageParser() throws Exception {
+        assertSameAsMimeMessageParser("plain-text-with-no-attachments");
+    }
+
+    @Test
+    public void parse_fakeSMTPGeneratedNoAttachments_SameAsMimeMessageParser() throws Exception {
+        assertSameAsMimeMessageParser("fakeSMTP-generated-no-attachments.eml");
+    }
+
+    @Test
+    public void parse_fakeSMTPGeneratedWithAttachments_SameAsMimeMessageParser() throws Exception {
+        assertSameAsMimeMessageParser("fakeSMTP-generated-with-attachments.eml");
+    }
+
+    @Test
+    public void parse_WithAttachments_CountsDecodedSize() throws Exception {
+        EmailMessage result = parseStreaming("with-attachments");
+
+        assertThat(result.getAttachments())
+                .filteredOn(attachment -> attachment.getContentType().getMediaType().equals("image/png"))
+                .extracting(EmailAttachment::getSize)
+                .containsExactly(new File("./test-data/house.png").length());
+    }
+
+    @Test
+    public void parse_WithAttachments_StoresDecodedContent() throws Exception {
+        Map<String, byte[]> stored = new HashMap<>();
+        AttachmentStore store = in -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StoredContent content = StoredContent.copy(in, out);
+            stored.put(content.getHash(), out.toByteArray());
+            return content;
+        };
+
+        EmailMessage result;
+        try (InputStream input = new FileInputStream(new File(TEST_EMAILS_PATH + "with-attachments"))) {
+            result = StreamingEmailExtractor.parse(input, store);
+        }
+
+        EmailAttachment house = result.getAttachments().stream()
+                .filter(attachment -> attachment.getContentType().getMediaType().equals("image/png"))
+                .findFirst().get();
+        assertThat(stored.get(house.getHash())).isEqualTo(Files.readAllBytes(Paths.get("./test-data/house.png")));
+        assertThat(stored).hasSize(result.getAttachments().size());
+    }
+
+    @Test
+    public void parse_MultipartWithoutCloseDelimiter_KeepsParts() throws Exception {
+        String email = "From: a@email.com\r\n" +
+                "Content-Type: multipart/mixed; boundary=XYZ\r\n" +
+                "\r\n" +
+                "preamble\r\n" +
+                "--XYZ\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "\r\n" +
+                "plain body\r\n" +
+                "--XYZ\r\n" +
+                "Content-Type: application/pdf; name=\"sales.pdf\"\r\n" +
+                "\r\n" +
+                "1234\r\n" +
+                "--XYZX is not a delimiter\r\n";
+
+        EmailMessage result = StreamingEmailExtractor.parse(
+                new ByteArrayInputStream(email.getBytes(StandardCharsets.US_ASCII)));
+
+        assertThat(result.getFromWho()).containsExactly("a@email.com");
+        assertThat(result.getBody().getContent()).isEqualTo("plain body");
+        assertThat(result.getAttachments())
+                .extracting(EmailAttachment::getFileName, EmailAttachment::getSize)
+                .containsExactly(tuple("sales.pdf", 33L));
+    }
+}
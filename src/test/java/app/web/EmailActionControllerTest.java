@@ -1,6 +1,7 @@
 package app.web;
 
 import app.domain.EmailMessage;
+import app.mailextractors.FileAttachmentStore;
 import app.utils.TestUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
@@ -17,6 +18,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -39,6 +41,9 @@ public class EmailActionControllerTest {
     @MockBean
     private EmailMessageRepository repository;
 
+    @MockBean
+    private FileAttachmentStore attachmentStore;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -83,7 +88,8 @@ public class EmailActionControllerTest {
         assertThat(testEmailTwo.isRead()).isFalse();
         assertThat(testEmailThree.isRead()).isTrue();
 
-        when(repository.findAll()).thenReturn(Arrays.asList(testEmailOne, testEmailTwo, testEmailThree));
+        when(repository.updateAllRead(true)).thenReturn(Arrays.asList(
+                testEmailOne.getId(), testEmailTwo.getId(), testEmailThree.getId()));
 
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("action", ActionType.READ_ALL.name());
@@ -99,8 +105,7 @@ public class EmailActionControllerTest {
                 .andExpect(jsonPath("$.[2].id").value(testEmailThree.getId().toString()))
                 .andExpect(jsonPath("$.[2].read").value(true));
 
-        verify(repository, times(1)).findAll();
-        verify(repository, times(1)).saveAll(anyIterable());
+        verify(repository, times(1)).updateAllRead(true);
         verifyNoMoreInteractions(repository);
     }
 
@@ -116,7 +121,8 @@ public class EmailActionControllerTest {
         assertThat(testEmailTwo.isRead()).isFalse();
         assertThat(testEmailThree.isRead()).isTrue();
 
-        when(repository.findAll()).thenReturn(Arrays.asList(testEmailOne, testEmailTwo, testEmailThree));
+        when(repository.updateAllRead(false)).thenReturn(Arrays.asList(
+                testEmailOne.getId(), testEmailTwo.getId(), testEmailThree.getId()));
 
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("action", ActionType.UNREAD_ALL.name());
@@ -132,14 +138,13 @@ public class EmailActionControllerTest {
                 .andExpect(jsonPath("$.[2].id").value(testEmailThree.getId().toString()))
                 .andExpect(jsonPath("$.[2].read").value(false));
 
-        verify(repository, times(1)).findAll();
-        verify(repository, times(1)).saveAll(anyIterable());
+        verify(repository, times(1)).updateAllRead(false);
         verifyNoMoreInteractions(repository);
     }
 
     @Test
     public void handleAllEmailsAction_ReadAllEmails_NoEmailsExist_ReturnEmptyList() throws Exception {
-        when(repository.findAll()).thenReturn(Collections.emptyList());
+        when(repository.updateAllRead(true)).thenReturn(Collections.emptyList());
 
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("action", ActionType.READ_ALL.name());
@@ -150,14 +155,13 @@ public class EmailActionControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isEmpty());
 
-        verify(repository, times(1)).findAll();
-        verify(repository, never()).saveAll(anyIterable());
+        verify(repository, times(1)).updateAllRead(true);
         verifyNoMoreInteractions(repository);
     }
 
     @Test
     public void handleAllEmailsAction_UnreadAllEmails_NoEmails_ReturnEmptyList() throws Exception {
-        when(repository.findAll()).thenReturn(Collections.emptyList());
+        when(repository.updateAllRead(false)).thenReturn(Collections.emptyList());
 
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("action", ActionType.UNREAD_ALL.name());
@@ -168,8 +172,7 @@ public class EmailActionControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isEmpty());
 
-        verify(repository, times(1)).findAll();
-        verify(repository, never()).saveAll(anyIterable());
+        verify(repository, times(1)).updateAllRead(false);
         verifyNoMoreInteractions(repository);
     }
 
@@ -178,7 +181,18 @@ public class EmailActionControllerTest {
         mockMvc.perform(delete("/api/emails/actions"))
                 .andExpect(status().isNoContent());
 
-        verify(repository, times(1)).deleteAll();
+        verify(repository, times(1)).deleteAllEmails();
         verifyNoMoreInteractions(repository);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void handleDeleteAll_DeletesAttachmentContent() throws Exception {
+        when(repository.deleteAllEmails()).thenReturn(new HashSet<>(Arrays.asList("hash1", "hash2")));
+
+        mockMvc.perform(delete("/api/emails/actions"))
+                .andExpect(status().isNoContent());
+
+        verify(attachmentStore).delete("hash1");
+        verify(attachmentStore).delete("hash2");
+    }
+}
@@ -0,0 +1,35 @@
+package app.web;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EmailCursorTest {
+
+    @Test
+    public void decode_ReturnsEncodedCursor() {
+        EmailCursor cursor = new EmailCursor(new Date(1483265410123L), UUID.randomUUID());
+
+        assertThat(EmailCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    public void encode_IsUrlSafe() {
+        EmailCursor cursor = new EmailCursor(new Date(1483265410123L), UUID.randomUUID());
+
+        assertThat(cursor.encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    public void decode_InvalidCursor_ThrowsIllegalArgumentException() {
+        assertThatThrownBy(() -> EmailCursor.decode("not-a-cursor"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThatThrownBy(() -> EmailCursor.decode(new EmailCursor(new Date(), UUID.randomUUID()).encode() + "x"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,199 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import app.mailextractors.Body;
+import app.mailextractors.ContentType;
+import app.mailextractors.EmailAttachment;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class EmailIndexTest {
+
+    @Rule
+    public TemporaryFolder indexDir = new TemporaryFolder();
+
+    private final EmailMessageRepository repository = mock(EmailMessageRepository.class);
+
+    private EmailIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new EmailIndex("", 10, repository, mock(PlatformTransactionManager.class),
+                mock(TaskScheduler.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.destroy();
+    }
+
+    private EmailMessage email(String subject, String to, String body, long sentDate) {
+        return EmailMessage.builder()
+                .subject(subject)
+                .fromWho(new HashSet<>(Arrays.asList("sender@email.com")))
+                .toRecipients(new HashSet<>(Arrays.asList(to)))
+                .bccRecipients(new HashSet<>(Arrays.asList("hidden@email.com")))
+                .body(new Body(body, new ContentType(MediaType.TEXT_HTML_VALUE)))
+                .attachments(new HashSet<>(Arrays.asList(
+                        new EmailAttachment("invoice.pdf", new ContentType(MediaType.APPLICATION_PDF_VALUE)))))
+                .sentDate(new Date(sentDate))
+                .create();
+    }
+
+    private List<UUID> search(String query) {
+        return index.search(query, null, 10).stream().map(EmailCursor::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void search_FieldQueries_MatchOnlyThatField() {
+        EmailMessage alice = email("Password reset", "alice@x.com", "<p>Your reset link</p>", 1000);
+        EmailMessage bob = email("Welcome", "bob@x.com", "<p>Hello alice</p>", 2000);
+        index.add(Arrays.asList(alice, bob));
+
+        assertThat(search("to:alice@x.com subject:\"password reset\"")).containsExactly(alice.getId());
+        assertThat(search("alice")).containsExactly(bob.getId(), alice.getId());
+        assertThat(search("body:link")).containsExactly(alice.getId());
+        assertThat(search("attachment:invoice")).containsExactly(bob.getId(), alice.getId());
+    }
+
+    @Test
+    public void search_HtmlTagsAndBcc_NotMatchedByDefault() {
+        EmailMessage email = email("Welcome", "bob@x.com", "<p>Hello</p>", 1000);
+        index.add(Collections.singletonList(email));
+
+        assertThat(search("p")).isEmpty();
+        assertThat(search("hidden")).isEmpty();
+        assertThat(search("bcc:hidden@email.com")).containsExactly(email.getId());
+    }
+
+    @Test
+    public void search_PagesNewestFirst() {
+        EmailMessage first = email("Report", "a@x.com", "report", 1000);
+        EmailMessage second = email("Report", "a@x.com", "report", 2000);
+        EmailMessage third = email("Report", "a@x.com", "report", 2000);
+        index.add(Arrays.asList(first, second, third));
+
+        List<EmailCursor> page = index.search("report", null, 2);
+        List<EmailCursor> next = index.search("report", page.get(1), 2);
+
+        assertThat(page).extracting(EmailCursor::getSentDate).containsExactly(new Date(2000), new Date(2000));
+        assertThat(next).extracting(EmailCursor::getId).containsExactly(first.getId());
+    }
+
+    @Test
+    public void add_SameEmail_ReplacesIt() {
+        EmailMessage email = email("Welcome", "bob@x.com", "hello", 1000);
+        index.add(Collections.singletonList(email));
+        index.add(Collections.singletonList(email));
+
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void delete_RemovesEmails() {
+        EmailMessage kept = email("Welcome", "bob@x.com", "hello", 1000);
+        EmailMessage deleted = email("Welcome", "bob@x.com", "hello", 2000);
+        index.add(Arrays.asList(kept, deleted));
+
+        index.delete(Collections.singletonList(deleted.getId()));
+
+        assertThat(search("welcome")).containsExactly(kept.getId());
+    }
+
+    @Test
+    public void search_InvalidQuery_Throws() {
+        assertThatThrownBy(() -> index.search("subject:(unclosed", null, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rebuildIfOutOfDate_IndexesSavedEmails() {
+        EmailMessage email = email("Welcome", "bob@x.com", "hello", 1000);
+        when(repository.count()).thenReturn(1L);
+        when(repository.findSummaries(any(PageRequest.class))).thenReturn(Collections.singletonList(
+                new EmailSummary(email.getId(), email.getSubject(), email.getSentDate(), false, 1)));
+        when(repository.findAllById(any())).thenReturn(Collections.singletonList(email));
+
+        index.rebuildIfOutOfDate();
+
+        assertThat(search("welcome")).containsExactly(email.getId());
+    }
+
+    @Test
+    public void rebuildIfOutOfDate_SameCount_DoesNothing() {
+        index.add(Collections.singletonList(email("Welcome", "bob@x.com", "hello", 1000)));
+        when(repository.count()).thenReturn(1L);
+
+        index.rebuildIfOutOfDate();
+
+        verify(repository, never()).findSummaries(any());
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    private EmailIndex onDiskIndex() throws Exception {
+        return new EmailIndex(indexDir.getRoot().getAbsolutePath(), 10, repository,
+                mock(PlatformTransactionManager.class), mock(TaskScheduler.class));
+    }
+
+    @Test
+    public void rebuildIfOutOfDate_OnDiskIndexClosedCleanly_SameCount_DoesNothing() throws Exception {
+        EmailIndex closed = onDiskIndex();
+        closed.add(Collections.singletonList(email("Welcome", "bob@x.com", "hello", 1000)));
+        closed.destroy();
+        when(repository.count()).thenReturn(1L);
+
+        EmailIndex reopened = onDiskIndex();
+        try {
+            reopened.rebuildIfOutOfDate();
+
+            verify(repository, never()).findSummaries(any());
+            assertThat(reopened.size()).isEqualTo(1);
+        } finally {
+            reopened.destroy();
+        }
+    }
+
+    @Test
+    public void rebuildIfOutOfDate_OnDiskIndexNotClosedCleanly_RebuildsEvenWithSameCount() throws Exception {
+        // What a crash leaves behind, the last commit was made while the index was still open.
+        try (Directory directory = FSDirectory.open(indexDir.getRoot().toPath());
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.setLiveCommitData(Collections.singletonMap(EmailIndex.CLOSED_CLEANLY, "false").entrySet());
+        }
+        when(repository.count()).thenReturn(0L);
+
+        EmailIndex reopened = onDiskIndex();
+        try {
+            reopened.rebuildIfOutOfDate();
+
+            verify(repository).findSummaries(any());
+        } finally {
+            reopened.destroy();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import app.mailextractors.Body;
+import app.mailextractors.ContentType;
+import app.mailextractors.EmailAttachment;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Listing emails must cost the same number of queries no matter how many emails there are.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles("test")
+public class EmailMessageQueryCountIT {
+
+    // At most 1 for the emails and 1 for each of the 6 collections
+    private static final long LIST_QUERIES = 7;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmailMessageRepository repository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private void saveEmails(int count) {
+        for (int i = 0; i < count; i++) {
+            repository.save(EmailMessage.builder()
+                    .subject("test " + i + " email subject")
+                    .fromWho(new HashSet<>(Arrays.asList("from" + i + "@email.com")))
+                    .replyTo(new HashSet<>(Arrays.asList("reply" + i + "@email.com")))
+                    .toRecipients(new HashSet<>(Arrays.asList("to" + i + "@email.com", "you@email.com")))
+                    .ccRecipients(new HashSet<>(Arrays.asList("cc" + i + "@email.com")))
+                    .bccRecipients(new HashSet<>(Arrays.asList("bcc" + i + "@email.com")))
+                    .body(new Body("some body text", new ContentType(MediaType.TEXT_PLAIN_VALUE)))
+                    .attachments(new HashSet<>(Arrays.asList(
+                            new EmailAttachment("notes.txt", new ContentType(MediaType.TEXT_PLAIN_VALUE)),
+                            new EmailAttachment("sales.pdf", new ContentType(MediaType.APPLICATION_PDF_VALUE)))))
+                    .create());
+        }
+    }
+
+    private long countListQueries(String url) {
+        statistics.clear();
+        ResponseEntity<String> result = restTemplate.getForEntity(url, String.class);
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Test
+    public void rest_findAll_QueryCountDoesNotGrowWithEmails() {
+        saveEmails(5);
+        long queries = countListQueries("/api/emails?sort=sentDate,desc");
+        assertThat(queries).isLessThanOrEqualTo(LIST_QUERIES);
+
+        saveEmails(20);
+        assertThat(countListQueries("/api/emails?sort=sentDate,desc")).isEqualTo(queries);
+    }
+
+    @Test
+    public void rest_Summaries_UsesTwoQueries() {
+        saveEmails(25);
+
+        assertThat(countListQueries("/api/emails/summaries?size=20")).isEqualTo(2);
+    }
+}
@@ -1,8 +1,13 @@
 package app.web;
 
 import app.domain.EmailMessage;
+import app.mailextractors.ContentType;
+import app.mailextractors.EmailAttachment;
 import app.mailextractors.EmailExtractor;
+import app.mailextractors.FileAttachmentStore;
+import app.mailextractors.StoredContent;
 import app.utils.TestUtils;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.junit.Before;
@@ -16,8 +21,11 @@ import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.server.core.TypeReferences;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -27,12 +35,32 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -46,8 +74,22 @@ public class EmailMessageRepositoryIT {
     @Autowired
     private EmailMessageRepository repository;
 
+    @Autowired
+    private FileAttachmentStore attachmentStore;
+
+    @Autowired
+    private EmailIndex emailIndex;
+
+    @Autowired
+    private EmailWaiters emailWaiters;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private HttpClient httpClient = HttpClientBuilder.create().build();
 
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
     @Before
     public void setUp() throws Exception {
         // PATCH wont work using RestTemplate without this.
@@ -118,6 +160,47 @@ public class EmailMessageRepositoryIT {
         assertThat(repository.findAll()).isEmpty();
     }
 
+    @Test
+    public void rest_ReadAll_UpdatesEveryEmail() throws Exception {
+        EmailMessage firstEmail = TestUtils.createTestEmailOne();
+        EmailMessage secondEmail = TestUtils.createTestEmailTwo();
+        secondEmail.read();
+        repository.save(firstEmail);
+        repository.save(secondEmail);
+
+        ResponseEntity<List> result = restTemplate.postForEntity("/api/emails/actions",
+                new ActionRequest(ActionType.READ_ALL), List.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(result.getBody()).hasSize(2);
+        assertThat(repository.findById(firstEmail.getId()).get().isRead()).isTrue();
+        assertThat(repository.findById(secondEmail.getId()).get().isRead()).isTrue();
+    }
+
+    @Test
+    public void rest_DeleteAll_RemovesRecipientsAndAttachments() throws Exception {
+        MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setFrom("test@email.com");
+        helper.setTo("you@email.com");
+        helper.setCc("person3@email.com");
+        helper.setBcc("person4@email.com");
+        helper.setSubject("test email with attachment");
+        helper.setText("some body text", false);
+        helper.addAttachment("notes.txt", new File("./test-data/notes.txt"));
+        repository.save(EmailExtractor.parse(message));
+
+        restTemplate.delete("/api/emails/actions");
+
+        assertThat(repository.count()).isZero();
+        assertThat(countRows("email_attachment")).isZero();
+        assertThat(countRows("email_message_to_recipients")).isZero();
+    }
+
+    private long countRows(String table) {
+        return ((Number) entityManager.createNativeQuery("select count(*) from " + table).getSingleResult()).longValue();
+    }
+
     @Test
     public void rest_DeleteOne_Returns204NoContentWhenSuccessful() throws Exception {
         EmailMessage firstEmail = TestUtils.createTestEmailOne();
@@ -183,4 +266,384 @@ public class EmailMessageRepositoryIT {
         assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
         assertThat(repository.findById(firstEmail.getId()).isPresent()).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void rest_Summaries_PagesThroughAllEmailsNewestFirst() throws Exception {
+        Set<UUID> saved = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+            helper.setFrom("email" + i + "@email.com");
+            helper.setTo("you@email.com");
+            helper.setSubject("test " + i + " email subject");
+            helper.setText("some body text", false);
+            // emails 3 and 4 share a sent date so the id decides their order
+            message.setSentDate(new GregorianCalendar(2017, Calendar.JANUARY, 1, 10, 10, Math.min(i, 3)).getTime());
+            saved.add(repository.save(EmailExtractor.parse(message)).getId());
+        }
+
+        List<UUID> ids = new ArrayList<>();
+        List<Long> sentDates = new ArrayList<>();
+        String next = null;
+        int pages = 0;
+        do {
+            String url = "/api/emails/summaries?size=2" + (next == null ? "" : "&cursor=" + next);
+            ResponseEntity<JsonNode> result = restTemplate.getForEntity(url, JsonNode.class);
+            assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+            for (JsonNode summary : result.getBody().get("emails")) {
+                ids.add(UUID.fromString(summary.get("id").asText()));
+                sentDates.add(dateFormat.parse(summary.get("sentDate").asText()).getTime());
+                assertThat(summary.has("body")).isFalse();
+                assertThat(summary.get("from")).hasSize(1);
+            }
+            next = result.getBody().get("next").isNull() ? null : result.getBody().get("next").asText();
+            pages++;
+        } while (next != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(ids).doesNotHaveDuplicates().containsExactlyInAnyOrderElementsOf(saved);
+        assertThat(sentDates).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+
+    @Test
+    public void rest_Summaries_InvalidCursor_Returns400() {
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/summaries?cursor=not-a-cursor",
+                JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void rest_Search_ReturnsMatchingSummaries() throws Exception {
+        EmailMessage first = repository.save(TestUtils.createTestEmailOne());
+        EmailMessage second = repository.save(TestUtils.createTestEmailTwo());
+        emailIndex.add(Arrays.asList(first, second));
+
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity(
+                "/api/emails/search?q=cc:person12@email.com another", JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        JsonNode emails = result.getBody().get("emails");
+        assertThat(emails).hasSize(1);
+        assertThat(emails.get(0).get("id").asText()).isEqualTo(second.getId().toString());
+        assertThat(emails.get(0).get("from").get(0).asText()).isEqualTo("test200@email.com");
+        assertThat(result.getBody().get("next").isNull()).isTrue();
+    }
+
+    @Test
+    public void rest_Search_DeletedEmail_LeftOut() throws Exception {
+        EmailMessage email = repository.save(TestUtils.createTestEmailOne());
+        emailIndex.add(Collections.singletonList(email));
+        restTemplate.delete("/api/emails/" + email.getId());
+
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/search?q=subject", JsonNode.class);
+
+        assertThat(result.getBody().get("emails")).isEmpty();
+        assertThat(emailIndex.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void rest_Search_InvalidQuery_Returns400() {
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/search?q=subject:(unclosed",
+                JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void rest_Latest_ReturnsNewestToAddress() throws Exception {
+        EmailMessage bcc = repository.save(TestUtils.createTestEmailTwo());
+        EmailMessage to = repository.save(TestUtils.createTestEmailThree());
+        repository.save(TestUtils.createTestEmailOne());
+
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity(
+                "/api/emails/latest?to=Someone <Person33@Email.com>&size=5", JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        List<String> ids = new ArrayList<>();
+        result.getBody().get("emails").forEach(email -> ids.add(email.get("id").asText()));
+        assertThat(ids).containsExactlyInAnyOrder(bcc.getId().toString(), to.getId().toString());
+    }
+
+    @Test
+    public void rest_Latest_Since_LeavesOutOlderEmails() throws Exception {
+        EmailMessage email = repository.save(TestUtils.createTestEmailOne());
+
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/latest?to=you@email.com&since=" +
+                (email.getSentDate().getTime() + 1000), JsonNode.class);
+
+        assertThat(result.getBody().get("emails")).isEmpty();
+    }
+
+    @Test
+    public void rest_Latest_Wait_ReturnsEmailOnceSaved() throws Exception {
+        CompletableFuture<ResponseEntity<JsonNode>> response = CompletableFuture.supplyAsync(() ->
+                restTemplate.getForEntity("/api/emails/latest?to=you@email.com&wait=30", JsonNode.class));
+        while (emailWaiters.size() == 0) {
+            Thread.sleep(10);
+        }
+
+        EmailMessage email = repository.save(TestUtils.createTestEmailOne());
+        emailWaiters.saved(Collections.singletonList(email));
+
+        JsonNode emails = response.get(10, TimeUnit.SECONDS).getBody().get("emails");
+        assertThat(emails).hasSize(1);
+        assertThat(emails.get(0).get("id").asText()).isEqualTo(email.getId().toString());
+        assertThat(emails.get(0).get("from").get(0).asText()).isEqualTo("test100@email.com");
+        assertThat(emailWaiters.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void rest_Latest_WaitTimesOut_ReturnsEmptyPage() {
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/latest?to=you@email.com&wait=1",
+                JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody().get("emails")).isEmpty();
+        assertThat(emailWaiters.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void rest_Await_ReturnsNextMatchingEmail() throws Exception {
+        CompletableFuture<ResponseEntity<JsonNode>> response = CompletableFuture.supplyAsync(() ->
+                restTemplate.getForEntity("/api/emails/await?to=person@email.com&subject=EMAIL 2&timeout=30",
+                        JsonNode.class));
+        while (emailWaiters.size() == 0) {
+            Thread.sleep(10);
+        }
+
+        EmailMessage other = repository.save(TestUtils.createTestEmailOne());
+        EmailMessage email = repository.save(TestUtils.createTestEmailTwo());
+        emailWaiters.saved(Arrays.asList(other, email));
+
+        ResponseEntity<JsonNode> result = response.get(10, TimeUnit.SECONDS);
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody().get("id").asText()).isEqualTo(email.getId().toString());
+    }
+
+    @Test
+    public void rest_Await_TimesOut_ReturnsNoContent() {
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/await?to=you@email.com&timeout=1",
+                JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(emailWaiters.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void countRows_CountsEachTable() throws Exception {
+        repository.save(TestUtils.createTestEmailOne());
+        repository.save(TestUtils.createTestEmailTwo());
+
+        assertThat(repository.countRows("email_message")).isEqualTo(2);
+        assertThat(repository.countRows("email_message_recipients")).isEqualTo(5);
+        assertThatThrownBy(() -> repository.countRows("information_schema.tables"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void forEachEmail_ReadsEveryChunkNewestFirst() throws Exception {
+        List<UUID> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+            helper.setFrom("email" + i + "@email.com");
+            helper.setTo("you@email.com");
+            helper.setSubject("test " + i + " email subject");
+            helper.setText("some body text", false);
+            message.setSentDate(new GregorianCalendar(2017, Calendar.JANUARY, 1, 10, 10, i).getTime());
+            saved.add(0, repository.save(EmailExtractor.parse(message)).getId());
+        }
+
+        List<UUID> ids = new ArrayList<>();
+        repository.forEachEmail(2, email -> {
+            assertThat(email.getFromWho()).hasSize(1);
+            assertThat(email.getToRecipients()).containsExactly("you@email.com");
+            ids.add(email.getId());
+        });
+
+        assertThat(ids).containsExactlyElementsOf(saved);
+    }
+
+    @Test
+    public void rest_Export_WritesEveryEmailNewestFirst() throws Exception {
+        List<UUID> saved = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+            helper.setFrom("email" + i + "@email.com");
+            helper.setTo("you" + i + "@email.com");
+            helper.setSubject("test " + i + " email subject");
+            helper.setText("some body text", false);
+            message.setSentDate(new GregorianCalendar(2017, Calendar.JANUARY, 1, 10, 10, i).getTime());
+            saved.add(repository.save(EmailExtractor.parse(message)).getId());
+        }
+
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/export", JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(result.getBody()).hasSize(2);
+        JsonNode newest = result.getBody().get(0);
+        assertThat(newest.get("id").asText()).isEqualTo(saved.get(1).toString());
+        assertThat(newest.get("from").get(0).asText()).isEqualTo("email1@email.com");
+        assertThat(newest.get("toRecipients").get(0).asText()).isEqualTo("you1@email.com");
+        assertThat(newest.get("body").has("content")).isFalse();
+        assertThat(newest.has("_links")).isFalse();
+        assertThat(result.getBody().get(1).get("id").asText()).isEqualTo(saved.get(0).toString());
+    }
+
+    @Test
+    public void rest_Export_NoEmails_ReturnsEmptyArray() {
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails/export", JsonNode.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody().isArray()).isTrue();
+        assertThat(result.getBody()).isEmpty();
+    }
+
+    @Test
+    public void rest_findAll_LeavesOutBodyContent() {
+        repository.save(TestUtils.createTestEmailOne());
+
+        ResponseEntity<JsonNode> result = restTemplate.getForEntity("/api/emails", JsonNode.class);
+
+        JsonNode body = result.getBody().get("_embedded").get("emails").get(0).get("body");
+        assertThat(body.has("content")).isFalse();
+        assertThat(body.get("size").asLong()).isEqualTo("some body text for email 1".length());
+    }
+
+    @Test
+    public void rest_Body_ReturnsContentWithEtag() {
+        EmailMessage email = repository.save(TestUtils.createTestEmailOne());
+
+        ResponseEntity<String> result = restTemplate.getForEntity("/api/emails/" + email.getId() + "/body",
+                String.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody()).isEqualTo("some body text for email 1");
+        assertThat(result.getHeaders().getContentType().isCompatibleWith(MediaType.TEXT_PLAIN)).isTrue();
+        assertThat(result.getHeaders().getETag()).isNotEmpty();
+    }
+
+    @Test
+    public void rest_Body_IfNoneMatch_Returns304() {
+        EmailMessage email = repository.save(TestUtils.createTestEmailOne());
+        String url = "/api/emails/" + email.getId() + "/body";
+        String etag = restTemplate.getForEntity(url, String.class).getHeaders().getETag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        ResponseEntity<String> result = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers),
+                String.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(result.getBody()).isNull();
+    }
+
+    @Test
+    public void rest_Body_Range_ReturnsPartialContent() {
+        EmailMessage email = repository.save(TestUtils.createTestEmailOne());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setRange(HttpRange.parseRanges("bytes=5-8"));
+        ResponseEntity<String> result = restTemplate.exchange("/api/emails/" + email.getId() + "/body",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(result.getBody()).isEqualTo("body");
+    }
+
+    @Test
+    public void rest_Body_UnknownEmail_Returns404() {
+        ResponseEntity<String> result = restTemplate.getForEntity("/api/emails/" + UUID.randomUUID() + "/body",
+                String.class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private StoredContent storeAttachment(String path) throws Exception {
+        try (InputStream in = new FileInputStream(path)) {
+            return attachmentStore.store(in);
+        }
+    }
+
+    @Test
+    public void rest_Attachment_DownloadsStoredContent() throws Exception {
+        StoredContent content = storeAttachment("./test-data/house.png");
+        EmailAttachment attachment = new EmailAttachment("house.png", new ContentType(MediaType.IMAGE_PNG_VALUE),
+                content);
+        EmailMessage email = repository.save(EmailMessage.builder()
+                .attachments(new HashSet<>(Collections.singletonList(attachment)))
+                .create());
+
+        ResponseEntity<byte[]> result = restTemplate.getForEntity(
+                "/api/emails/" + email.getId() + "/attachments/" + attachment.getId(), byte[].class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody()).isEqualTo(Files.readAllBytes(Paths.get("./test-data/house.png")));
+        assertThat(result.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+        assertThat(result.getHeaders().getContentDisposition().getFilename()).isEqualTo("house.png");
+        assertThat(result.getHeaders().getETag()).isEqualTo("\"" + content.getHash() + "\"");
+    }
+
+    @Test
+    public void rest_Attachment_OfAnotherEmail_Returns404() throws Exception {
+        StoredContent content = storeAttachment("./test-data/notes.txt");
+        EmailAttachment attachment = new EmailAttachment("notes.txt", new ContentType(MediaType.TEXT_PLAIN_VALUE),
+                content);
+        repository.save(EmailMessage.builder()
+                .attachments(new HashSet<>(Collections.singletonList(attachment)))
+                .create());
+        EmailMessage other = repository.save(EmailMessage.builder().create());
+
+        ResponseEntity<byte[]> result = restTemplate.getForEntity(
+                "/api/emails/" + other.getId() + "/attachments/" + attachment.getId(), byte[].class);
+
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Stored long enough ago that {@link FileAttachmentStore#delete} doesn't keep it as recently stored.
+     */
+    private StoredContent storeOldAttachment(String path) throws Exception {
+        StoredContent content = storeAttachment(path);
+        Files.setLastModifiedTime(attachmentStore.find(content.getHash()).get().toPath(),
+                FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2)));
+        return content;
+    }
+
+    @Test
+    public void rest_DeleteOne_DeletesAttachmentContentNoOtherEmailHas() throws Exception {
+        StoredContent image = storeOldAttachment("./test-data/house.png");
+        StoredContent notes = storeOldAttachment("./test-data/notes.txt");
+        EmailMessage deleted = repository.save(EmailMessage.builder()
+                .attachments(new HashSet<>(Arrays.asList(
+                        new EmailAttachment("house.png", new ContentType(MediaType.IMAGE_PNG_VALUE), image),
+                        new EmailAttachment("notes.txt", new ContentType(MediaType.TEXT_PLAIN_VALUE), notes))))
+                .create());
+        repository.save(EmailMessage.builder()
+                .attachments(new HashSet<>(Collections.singletonList(
+                        new EmailAttachment("notes.txt", new ContentType(MediaType.TEXT_PLAIN_VALUE), notes))))
+                .create());
+
+        restTemplate.delete("/api/emails/" + deleted.getId());
+
+        assertThat(attachmentStore.find(image.getHash())).isEmpty();
+        assertThat(attachmentStore.find(notes.getHash())).isPresent();
+    }
+
+    @Test
+    public void rest_DeleteAll_DeletesAttachmentContent() throws Exception {
+        StoredContent notes = storeOldAttachment("./test-data/notes.txt");
+        repository.save(EmailMessage.builder()
+                .attachments(new HashSet<>(Collections.singletonList(
+                        new EmailAttachment("notes.txt", new ContentType(MediaType.TEXT_PLAIN_VALUE), notes))))
+                .create());
+
+        restTemplate.delete("/api/emails/actions");
+
+        assertThat(attachmentStore.find(notes.getHash())).isEmpty();
+    }
+}
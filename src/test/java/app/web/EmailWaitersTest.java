@@ -0,0 +1,84 @@
+package app.web;
+
+import app.domain.EmailMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmailWaitersTest {
+
+    private final EmailWaiters waiters = new EmailWaiters();
+
+    private EmailMessage email(String to, String subject) {
+        return EmailMessage.builder()
+                .subject(subject)
+                .toRecipients(new HashSet<>(Arrays.asList(to)))
+                .create();
+    }
+
+    @Test
+    public void saved_ToAddress_CallsWaiterOnceWithFirstMatch() {
+        List<EmailMessage> matched = new ArrayList<>();
+        waiters.await("alice@x.com", email -> true, matched::add);
+        EmailMessage first = email("Alice <Alice@X.com>", "first");
+
+        waiters.saved(Arrays.asList(email("bob@x.com", "bob"), first, email("alice@x.com", "second")));
+        waiters.saved(Arrays.asList(email("alice@x.com", "third")));
+
+        assertThat(matched).containsExactly(first);
+        assertThat(waiters.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void saved_PredicateNotMatched_KeepsWaiting() {
+        List<EmailMessage> matched = new ArrayList<>();
+        waiters.await("alice@x.com", email -> email.getSubject().equals("reset"), matched::add);
+
+        waiters.saved(Arrays.asList(email("alice@x.com", "welcome"), email("bob@x.com", "reset")));
+
+        assertThat(matched).isEmpty();
+        assertThat(waiters.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void saved_AnyAddress_TestedAgainstEveryEmail() {
+        List<EmailMessage> matched = new ArrayList<>();
+        waiters.await(null, email -> email.getSubject().equals("reset"), matched::add);
+        EmailMessage reset = email("bob@x.com", "reset");
+
+        waiters.saved(Arrays.asList(email("alice@x.com", "welcome"), reset));
+
+        assertThat(matched).containsExactly(reset);
+    }
+
+    @Test
+    public void saved_ManyWaiters_EachCalledForTheirOwnAddress() {
+        List<EmailMessage> matched = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            waiters.await("user" + i + "@x.com", email -> true, matched::add);
+        }
+        EmailMessage email = email("user500@x.com", "welcome");
+
+        waiters.saved(Arrays.asList(email));
+
+        assertThat(matched).containsExactly(email);
+        assertThat(waiters.size()).isEqualTo(999);
+    }
+
+    @Test
+    public void await_Cancelled_NotCalled() {
+        List<EmailMessage> matched = new ArrayList<>();
+        waiters.await("alice@x.com", email -> true, matched::add).run();
+        waiters.await(null, email -> true, matched::add).run();
+
+        waiters.saved(Arrays.asList(email("alice@x.com", "welcome")));
+
+        assertThat(matched).isEmpty();
+        assertThat(waiters.size()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,61 @@
+package app.web;
+
+import app.WebApplication;
+import app.domain.EmailMessage;
+import app.mailextractors.Body;
+import app.mailextractors.ContentType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The {@code persistent} profile must keep emails across restarts, creating the schema from the migrations on the
+ * first start and reusing it afterwards.
+ */
+public class PersistentStorageIT {
+
+    @Rule
+    public TemporaryFolder dataDir = new TemporaryFolder();
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(WebApplication.class)
+                .profiles("test", "persistent")
+                .properties(
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "email.data.dir=" + dataDir.getRoot().getAbsolutePath())
+                .run();
+    }
+
+    @Test
+    public void emails_AreKeptAcrossRestarts() {
+        UUID id;
+        try (ConfigurableApplicationContext context = start()) {
+            id = context.getBean(EmailMessageRepository.class).save(EmailMessage.builder()
+                    .subject("kept email subject")
+                    .fromWho(new HashSet<>(Arrays.asList("from@email.com")))
+                    .toRecipients(new HashSet<>(Arrays.asList("to@email.com")))
+                    .body(new Body("some body text", new ContentType(MediaType.TEXT_PLAIN_VALUE)))
+                    .create()).getId();
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            EmailMessageRepository repository = context.getBean(EmailMessageRepository.class);
+
+            Optional<EmailMessage> email = repository.findById(id);
+            assertThat(email).isPresent();
+            assertThat(email.get().getSubject()).isEqualTo("kept email subject");
+            assertThat(repository.findBodyContent(id)).contains("some body text");
+        }
+    }
+}